@@ -1,12 +1,16 @@
 package GUIs.Controllers;
 
 import GUIs.AzulStage;
+import GUIs.Palette;
+import bot.HintService;
 import communication.ClientController;
 import communication.Header;
 import communication.Protocol;
 import game.Board;
 import game.Game;
+import game.Move;
 import game.Tile;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
@@ -22,13 +26,21 @@ import javafx.stage.Stage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * This class is javafx controller for Game Application.
  */
 public class GameController {
+    /**
+     * Searches suggested moves in the background, shared by all game windows.
+     */
+    private static final HintService HINTS = new HintService(1 << 16);
+
+    /**
+     * Time spent searching a suggested move, in milliseconds.
+     */
+    private static final long HINT_MILLIS = 1000;
 
     /**
      * Game objects connected to GUI
@@ -129,6 +141,14 @@ public class GameController {
     @FXML
     private ComboBox<String> viewSelector;
 
+    /**
+     * Suggested move
+     */
+    @FXML
+    private Button hintButton;
+    @FXML
+    private Label hintLabel;
+
     /**
      * Points
      */
@@ -429,40 +449,24 @@ public class GameController {
      * @param queueId id of queue to add
      */
     public void addToQueue(int queueId) {
-        Color color = (javafx.scene.paint.Color) currentTile.getBackground().getFills().get(0).getFill();
+        Tile color = Palette.tile((Color) currentTile.getBackground().getFills().get(0).getFill());
 
         //if nothing is picked
-        if (currentTileWorkshopId == -1) {
+        if (currentTileWorkshopId == -1 || color == null) {
             msgPopUp("Tile not selected");
             return;
         }
 
-        // if queue (or board) is already full or already has this tile's color
-        if (board.getTileQueues()[queueId].isFull() ||
-                !board.canAdd(queueId, Tile.valueOf(color))) {
-            msgPopUp("Queue is full or the Tile is already placed on the wall");
-            return;
-        }
-
-        // check whether the row is empty and can add this tile's color
-        if (board.getTileQueues()[queueId].getColor() != null &&
-                !board.canAddFilledQueue(board.getTileQueues()[queueId].getColor(), color)) {
-            msgPopUp("Cannot add this color to this Queue");
+        // if queue is already full, holds another color or the wall already has this tile's color
+        if (!board.accepts(queueId, color)) {
+            msgPopUp("Queue is full, holds another color or the Tile is already placed on the wall");
             return;
         }
 
-        ArrayList<Tile> pickedTiles;
-
-        //If picked from the middle
-        if (currentTileWorkshopId == -2) {
-            pickedTiles = game.pickTilesFromMiddle(id, Tile.valueOf(color));
-            //If picked from the workshop
-        } else {
-            pickedTiles = game.workshops[currentTileWorkshopId].pickTiles(Tile.valueOf(color));
-        }
-
+        int move;
         try {
-            board.addMulTilesToQueue(queueId, pickedTiles);
+            move = Move.encode(selectedSource(), color, queueId);
+            game.apply(move);
         } catch (IllegalArgumentException e) {
             msgPopUp(e.getMessage());
             return;
@@ -470,6 +474,7 @@ public class GameController {
 
         currentTileWorkshopId = -1;
         currentTile.setStyle("-fx-border-color: transparent");
+        hintLabel.setText("");
 
         //Updating all GUI fields after adding tile
         updateQueues();
@@ -477,11 +482,8 @@ public class GameController {
         updateFloor();
         updateWorkshops();
 
-        //Giving turn to next player
-        this.game.nextTurn();
-
-        Protocol request = new Protocol(Header.UPDATEGAME);
-        request.put("game", game);
+        Protocol request = new Protocol(Header.MOVE);
+        request.put("move", move);
         client.send(request);
     }
 
@@ -489,30 +491,26 @@ public class GameController {
      * Adds fallen tiles to the floor.
      */
     private void addToFloor() {
-        Color color = (javafx.scene.paint.Color) currentTile.getBackground().getFills().get(0).getFill();
+        Tile color = Palette.tile((Color) currentTile.getBackground().getFills().get(0).getFill());
 
         //if nothing is picked
-        if (currentTileWorkshopId == -1) {
+        if (currentTileWorkshopId == -1 || color == null) {
             msgPopUp("Tile not selected");
             return;
         }
 
-        ArrayList<Tile> pickedTiles;
-
-        //If picked from the middle
-        if (currentTileWorkshopId == -2) {
-            pickedTiles = game.pickTilesFromMiddle(id, Tile.valueOf(color));
-            //If picked from the workshop
-        } else {
-            pickedTiles = game.workshops[currentTileWorkshopId].pickTiles(Tile.valueOf(color));
-        }
-
-        for (Tile ignored : pickedTiles) {
-            board.addTileToFloor();
+        int move;
+        try {
+            move = Move.encode(selectedSource(), color, Move.FLOOR);
+            game.apply(move);
+        } catch (IllegalArgumentException e) {
+            msgPopUp(e.getMessage());
+            return;
         }
 
         currentTileWorkshopId = -1;
         currentTile.setStyle("-fx-border-color: transparent");
+        hintLabel.setText("");
 
         //Updating all GUI fields after adding tile
         updateWorkshops();
@@ -520,14 +518,58 @@ public class GameController {
         updateMiddle();
         updateFloor();
 
-        //Giving turn to next player
-        this.game.nextTurn();
-
-        Protocol request = new Protocol(Header.UPDATEGAME);
-        request.put("game", game);
+        Protocol request = new Protocol(Header.MOVE);
+        request.put("move", move);
         client.send(request);
     }
 
+    /**
+     * Gets source of the currently selected tile.
+     *
+     * @return selected workshop's id or Move.MIDDLE
+     */
+    private int selectedSource() {
+        return currentTileWorkshopId == -2 ? Move.MIDDLE : currentTileWorkshopId;
+    }
+
+    /**
+     * Requests a suggested move and shows it once it is found, without blocking the GUI.
+     */
+    public void suggestMove() {
+        try {
+            isMyTurn();
+        } catch (NotYourTurnException e) {
+            msgPopUp(e.getMessage());
+            return;
+        }
+
+        hintButton.setDisable(true);
+        hintLabel.setText("Thinking ...");
+        long hash = game.getHash();
+        HINTS.suggest(game, HINT_MILLIS).whenComplete((move, e) -> Platform.runLater(() -> {
+            hintButton.setDisable(false);
+            if (e != null) {
+                hintLabel.setText("");
+            } else if (game.getHash() == hash) { // skip hints of positions that have already changed
+                hintLabel.setText(describe(move));
+            }
+        }));
+    }
+
+    /**
+     * Describes passed move for the user.
+     *
+     * @param move packed move, see game.Move
+     * @return description of the move
+     */
+    private static String describe(int move) {
+        int source = Move.source(move);
+        int target = Move.target(move);
+        return String.format("Hint: take %s from %s to %s", Move.color(move),
+                source == Move.MIDDLE ? "the middle" : "workshop " + (source + 1),
+                target == Move.FLOOR ? "the floor" : "row " + (target + 1));
+    }
+
     /**
      * Method checks if it is this players turn
      *
@@ -618,9 +660,7 @@ public class GameController {
             if (queues[queueId].getCounter() != 0) {
                 for (int tile = queueId; tile > queueId - queues[queueId].getCounter(); tile--) {
                     if (queues[queueId].getColor() != null) {
-                        String style = "-fx-background-color: " + "#" + Integer.toHexString(
-                                queues[queueId].getColor().getRGB()).substring(2);
-                        this.queues.get(queueId)[tile].setStyle(style);
+                        this.queues.get(queueId)[tile].setStyle(Palette.style(queues[queueId].getColor()));
                     }
                 }
             } else {
@@ -650,8 +690,7 @@ public class GameController {
                     this.workshops.get(workshopIndex)[tileIndex].setStyle("-fx-background-color: transparent");
 
                 } else {
-                    String style = "-fx-background-color: " + "#" + Integer.toHexString(tile.getColor().getRGB()).substring(2);
-                    this.workshops.get(workshopIndex)[tileIndex].setStyle(style);
+                    this.workshops.get(workshopIndex)[tileIndex].setStyle(Palette.style(tile));
                 }
                 tileIndex += 1;
             }
@@ -697,8 +736,7 @@ public class GameController {
             for (int j = 0; j < 5; j++) {
                 Tile color = order.get(j);
                 if (placed[i][j]) {
-                    String style = "-fx-background-color: " + "#" + Integer.toHexString(color.getColor().getRGB()).substring(2);
-                    pattern.get(i)[j].setStyle(style);
+                    pattern.get(i)[j].setStyle(Palette.style(color));
                 }
             }
             Collections.rotate(order, 1);
@@ -710,24 +748,11 @@ public class GameController {
      * Updates middle field counters in GUI
      */
     public void updateMiddle() {
-        LinkedList<Tile> middle = game.getMiddleField();
-        resetLabel(blackLabel);
-        resetLabel(redLabel);
-        resetLabel(yellowLabel);
-        resetLabel(greenLabel);
-        resetLabel(blueLabel);
-
-        for (Tile tile : middle) {
-            switch (tile) {
-                case BLACK -> addToLabel(blackLabel);
-                case RED -> addToLabel(redLabel);
-                case YELLOW -> addToLabel(yellowLabel);
-                case GREEN -> addToLabel(greenLabel);
-                case BLUE -> addToLabel(blueLabel);
-                default -> {
-                }
-            }
-        }
+        blackLabel.setText(String.valueOf(game.getMiddleCount(Tile.BLACK)));
+        redLabel.setText(String.valueOf(game.getMiddleCount(Tile.RED)));
+        yellowLabel.setText(String.valueOf(game.getMiddleCount(Tile.YELLOW)));
+        greenLabel.setText(String.valueOf(game.getMiddleCount(Tile.GREEN)));
+        blueLabel.setText(String.valueOf(game.getMiddleCount(Tile.BLUE)));
 
         if (game.isFirst()) {
             middleSpecial.setText("1");
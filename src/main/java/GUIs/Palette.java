@@ -0,0 +1,76 @@
+package GUIs;
+
+import game.Tile;
+import javafx.scene.paint.Color;
+
+/**
+ * This class maps Tiles to the colours they are displayed with. Colours and styles are
+ * created once and looked up by the Tile's ordinal.
+ */
+public final class Palette {
+    /**
+     * Colour of every Tile, indexed by its ordinal.
+     */
+    private static final Color[] COLORS = {
+            Color.web("#000000"), // BLACK
+            Color.web("#FF0000"), // RED
+            Color.web("#FFD700"), // YELLOW
+            Color.web("#008000"), // GREEN
+            Color.web("#0000FF")  // BLUE
+    };
+
+    /**
+     * Background style of every Tile, indexed by its ordinal.
+     */
+    private static final String[] STYLES = {
+            "-fx-background-color: #000000",
+            "-fx-background-color: #ff0000",
+            "-fx-background-color: #ffd700",
+            "-fx-background-color: #008000",
+            "-fx-background-color: #0000ff"
+    };
+
+    /**
+     * All tiles, indexed by their ordinal.
+     */
+    private static final Tile[] TILES = Tile.values();
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private Palette() {
+    }
+
+    /**
+     * Returns colour of passed Tile.
+     *
+     * @param tile tile to display
+     * @return colour of the Tile
+     */
+    public static Color color(Tile tile) {
+        return COLORS[tile.ordinal()];
+    }
+
+    /**
+     * Returns background style of a node displaying passed Tile.
+     *
+     * @param tile tile to display
+     * @return style setting the background to the Tile's colour
+     */
+    public static String style(Tile tile) {
+        return STYLES[tile.ordinal()];
+    }
+
+    /**
+     * Returns the Tile displayed with passed colour.
+     *
+     * @param color colour to match a Tile
+     * @return matching Tile, null if no Tile has the colour
+     */
+    public static Tile tile(Color color) {
+        for (int i = 0; i < COLORS.length; i++) {
+            if (COLORS[i].equals(color)) return TILES[i];
+        }
+        return null;
+    }
+}
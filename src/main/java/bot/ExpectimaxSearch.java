@@ -0,0 +1,378 @@
+package bot;
+
+import game.Board;
+import game.Game;
+import game.Move;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class is a bot that plays Azul using time-bounded iterative-deepening expectimax search.
+ * <p>
+ * The current player maximizes the difference between its projected score and the best projected score
+ * of the other players, who are assumed to minimize it, so alpha-beta pruning applies within a round.
+ * A move ending the round leads to a chance node: workshops of the next round are refilled from the pouch
+ * several times with fresh randomness and the values of the samples are averaged.
+ * <p>
+ * Search deepens one ply at a time until the deadline passes and the move of the deepest finished
+ * iteration is returned, so a move is always available. Positions are cached in a
+ * {@link TranspositionTable}, which may be shared with other searches.
+ * An instance must only be used by one thread at a time.
+ */
+public class ExpectimaxSearch implements Policy {
+    /**
+     * Maximal depth of search.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Number of sampled refills of every chance node.
+     */
+    private static final int CHANCE_SAMPLES = 4;
+
+    /**
+     * Number of visited nodes between checks of the deadline.
+     */
+    private static final int CHECK_INTERVAL = 256;
+
+    /**
+     * Keys distinguishing values of the same position searched for different players.
+     */
+    private static final long[] PERSPECTIVE = {
+            0, 0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L, 0x94D049BB133111EBL
+    };
+
+    /**
+     * Thrown to unwind the search when the deadline passes.
+     */
+    private static final RuntimeException TIMEOUT = new RuntimeException("Search timed out", null, false, false) {
+    };
+
+    /**
+     * Time that this bot spends on every move, in nanoseconds.
+     */
+    private final long budgetNanos;
+
+    /**
+     * Table of searched positions.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * Source of randomness of chance nodes.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Buffers for legal moves, one for every ply.
+     */
+    private final int[][] moves = new int[MAX_DEPTH + 1][Move.MAX_MOVES];
+
+    /**
+     * Deadline of the current search, in System.nanoTime() units.
+     */
+    private long deadline;
+
+    /**
+     * Player for whom the current search is made.
+     */
+    private int root;
+
+    /**
+     * Indicating whether the current iteration stopped anywhere because of its depth.
+     */
+    private boolean depthLimited;
+
+    /**
+     * Number of nodes visited by the last search.
+     */
+    private long lastNodes;
+
+    /**
+     * Depth of the last finished iteration of the last search.
+     */
+    private int lastDepth;
+
+    /**
+     * Constructor for this, with a table of its own.
+     *
+     * @param budgetMillis time spent on every move, in milliseconds
+     * @param seed         seed of this bot's randomness
+     */
+    public ExpectimaxSearch(long budgetMillis, long seed) {
+        this(budgetMillis, seed, new TranspositionTable(1 << 16));
+    }
+
+    /**
+     * Constructor for this.
+     *
+     * @param budgetMillis time spent on every move, in milliseconds
+     * @param seed         seed of this bot's randomness
+     * @param table        table of searched positions
+     */
+    public ExpectimaxSearch(long budgetMillis, long seed, TranspositionTable table) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        this.budgetNanos = budgetMillis * 1_000_000;
+        this.random = new SplittableRandom(seed);
+        this.table = table;
+    }
+
+    /**
+     * Chooses a move for the current player of passed game within this bot's budget. Passed game is not modified.
+     *
+     * @param game position to choose a move in
+     * @return chosen move, packed as described in {@link Move}
+     */
+    @Override
+    public int chooseMove(Game game) {
+        return search(game, System.nanoTime() + budgetNanos);
+    }
+
+    /**
+     * Searches for the best move of the current player of passed game until passed deadline.
+     * Passed game is not modified.
+     *
+     * @param game     position to search
+     * @param deadline time to return by, in System.nanoTime() units
+     * @return best move found, packed as described in {@link Move}
+     * @throws IllegalStateException if there are no legal moves
+     */
+    public int search(Game game, long deadline) {
+        int count = game.legalMoves(moves[0]);
+        if (count == 0) {
+            throw new IllegalStateException("No legal moves");
+        }
+        this.deadline = deadline;
+        this.root = game.getCurrentPlayerTurn();
+        this.lastNodes = 0;
+        this.lastDepth = 0;
+        table.newSearch();
+
+        int best = moves[0][0];
+        // moves are made and unmade on a copy, which a timeout may leave in the middle of the tree
+        Game position = new Game(game);
+        try {
+            for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+                depthLimited = false;
+                best = searchRoot(position, depth, best);
+                lastDepth = depth;
+                // the whole tree fits into this depth, searching deeper changes nothing
+                if (!depthLimited) break;
+            }
+        } catch (RuntimeException e) {
+            if (e != TIMEOUT) throw e;
+        }
+        return best;
+    }
+
+    /**
+     * Searches all moves of the root position to passed depth.
+     *
+     * @param game     root position
+     * @param depth    depth of this iteration
+     * @param previous best move of the previous iteration, searched first
+     * @return best move of this iteration
+     */
+    private int searchRoot(Game game, int depth, int previous) {
+        int[] buffer = moves[0];
+        int count = game.legalMoves(buffer);
+        orderFirst(buffer, count, previous);
+
+        int best = buffer[0];
+        float alpha = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float value = child(game, buffer[i], depth - 1, 1, alpha, Float.POSITIVE_INFINITY);
+            if (value > alpha) {
+                alpha = value;
+                best = buffer[i];
+            }
+        }
+        table.store(key(game), alpha, best, depth, TranspositionTable.EXACT);
+        return best;
+    }
+
+    /**
+     * Gets value of passed position.
+     *
+     * @param game  position to evaluate
+     * @param depth remaining depth
+     * @param ply   distance from the root
+     * @param alpha value the maximizing player is already assured of
+     * @param beta  value the minimizing players are already assured of
+     * @return value of the position for the root player
+     */
+    private float value(Game game, int depth, int ply, float alpha, float beta) {
+        if (++lastNodes % CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+            throw TIMEOUT;
+        }
+        if (game.isEndOfGame()) {
+            return evaluate(game);
+        }
+        if (depth == 0 || ply == MAX_DEPTH) {
+            depthLimited = true;
+            return evaluate(game);
+        }
+
+        long key = key(game);
+        long entry = table.probe(key);
+        int hashMove = -1;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                float value = TranspositionTable.value(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && value >= beta
+                        || bound == TranspositionTable.UPPER && value <= alpha) {
+                    // the stored value may have been searched only to the depth of this iteration
+                    depthLimited = true;
+                    return value;
+                }
+            }
+        }
+
+        int[] buffer = moves[ply];
+        int count = game.legalMoves(buffer);
+        orderFirst(buffer, count, hashMove);
+
+        boolean maximizing = game.getCurrentPlayerTurn() == root;
+        float best = maximizing ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        int bestMove = buffer[0];
+        float low = alpha;
+        float high = beta;
+        for (int i = 0; i < count && low < high; i++) {
+            float value = child(game, buffer[i], depth - 1, ply + 1, low, high);
+            if (maximizing ? value > best : value < best) {
+                best = value;
+                bestMove = buffer[i];
+            }
+            if (maximizing) {
+                low = Math.max(low, value);
+            } else {
+                high = Math.min(high, value);
+            }
+        }
+
+        int bound = best <= alpha ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, best, bestMove, depth, bound);
+        return best;
+    }
+
+    /**
+     * Gets value of the position after passed move. If the move ends the round, the value is
+     * the mean over several random refills of the workshops.
+     *
+     * @param game  position to make the move in
+     * @param move  move to make
+     * @param depth remaining depth after the move
+     * @param ply   distance of the position after the move from the root
+     * @param alpha value the maximizing player is already assured of
+     * @param beta  value the minimizing players are already assured of
+     * @return value of the position after the move for the root player
+     */
+    private float child(Game game, int move, int depth, int ply, float alpha, float beta) {
+        if (!game.endsRound(move)) {
+            game.make(move);
+            float value = value(game, depth, ply, alpha, beta);
+            game.unmake();
+            return value;
+        }
+
+        float sum = 0;
+        for (int sample = 0; sample < CHANCE_SAMPLES; sample++) {
+            Game next = new Game(game, random.split());
+            next.apply(move);
+            sum += value(next, depth, ply, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+        }
+        return sum / CHANCE_SAMPLES;
+    }
+
+    /**
+     * Estimates value of passed position for the root player: its projected score
+     * minus the best projected score of the other players.
+     *
+     * @param game position to evaluate
+     * @return value of the position
+     */
+    private float evaluate(Game game) {
+        boolean ended = game.isEndOfGame();
+        float own = 0;
+        float best = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < game.playerCount(); i++) {
+            float projected = projectedScore(game.getPlayer(i), ended);
+            if (i == root) {
+                own = projected;
+            } else {
+                best = Math.max(best, projected);
+            }
+        }
+        return own - best;
+    }
+
+    /**
+     * Estimates final score of passed board: its projected score (see {@link Board#projectedScore()})
+     * plus the share of every pattern row that is not full yet.
+     *
+     * @param board board to rate
+     * @param ended true if the game has ended, so the score is final
+     * @return projected score
+     */
+    private static float projectedScore(Board board, boolean ended) {
+        if (ended) {
+            return board.getScore();
+        }
+        float projected = board.projectedScore();
+        for (Board.TileQueue queue : board.getTileQueues()) {
+            if (!queue.isFull()) projected += (float) queue.getCounter() / queue.getSize();
+        }
+        return projected;
+    }
+
+    /**
+     * Moves passed move to the front of passed buffer, if present.
+     *
+     * @param buffer moves
+     * @param count  number of moves in the buffer
+     * @param move   move to search first
+     */
+    private static void orderFirst(int[] buffer, int count, int move) {
+        for (int i = 1; i < count; i++) {
+            if (buffer[i] == move) {
+                buffer[i] = buffer[0];
+                buffer[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets key of passed position searched for this.root.
+     *
+     * @param game position
+     * @return key in this.table
+     */
+    private long key(Game game) {
+        return game.getHash() ^ PERSPECTIVE[root];
+    }
+
+    /**
+     * Getter for this.lastNodes.
+     *
+     * @return number of nodes visited by the last search
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    /**
+     * Getter for this.lastDepth.
+     *
+     * @return depth of the last finished iteration of the last search
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+}
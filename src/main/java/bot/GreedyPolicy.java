@@ -0,0 +1,81 @@
+package bot;
+
+import game.Board;
+import game.Game;
+import game.Move;
+import game.Tile;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class is a policy choosing the move that looks best right away:
+ * it fills pattern rows and avoids dropping tiles on the floor. Ties are broken randomly.
+ */
+public class GreedyPolicy implements Policy {
+    /**
+     * Source of randomness.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Buffer for legal moves.
+     */
+    private final int[] moves = new int[Move.MAX_MOVES];
+
+    /**
+     * Constructor for this.
+     *
+     * @param seed seed of this policy's randomness
+     */
+    public GreedyPolicy(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public int chooseMove(Game game) {
+        int count = game.legalMoves(moves);
+        if (count == 0) {
+            throw new IllegalStateException("No legal moves");
+        }
+        Board board = game.getPlayer(game.getCurrentPlayerTurn());
+        int best = -1;
+        int bestValue = Integer.MIN_VALUE;
+        int ties = 0;
+        for (int i = 0; i < count; i++) {
+            int value = evaluate(game, board, moves[i]);
+            if (value > bestValue) {
+                bestValue = value;
+                best = moves[i];
+                ties = 1;
+            } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Rates passed move by tiles it puts in pattern rows, rows it completes and tiles it drops on the floor.
+     *
+     * @param game  position the move is made in
+     * @param board board of the moving player
+     * @param move  move to rate
+     * @return value of the move, the higher the better
+     */
+    private static int evaluate(Game game, Board board, int move) {
+        int source = Move.source(move);
+        Tile color = Move.color(move);
+        int target = Move.target(move);
+
+        int taken = game.count(source, color);
+        int dropped = source == Move.MIDDLE && game.isFirst() ? 1 : 0;
+        if (target == Move.FLOOR) {
+            return -2 * (taken + dropped);
+        }
+        Board.TileQueue queue = board.getTileQueues()[target];
+        int free = queue.getSize() - queue.getCounter();
+        int placed = Math.min(taken, free);
+        dropped += taken - placed;
+        return placed + (placed == free ? 2 : 0) - 2 * dropped;
+    }
+}
@@ -0,0 +1,62 @@
+package bot;
+
+import game.Game;
+import game.Move;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class suggests moves in the background, so that callers such as GUI threads never wait for a search.
+ * Requests are searched one at a time by {@link ExpectimaxSearch} on a single daemon thread,
+ * sharing one transposition table. A request's deadline is set when it is made,
+ * so a hint is ready within its budget even if it had to wait for the previous one.
+ */
+public class HintService {
+    /**
+     * Thread running the searches.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Search used for all requests.
+     */
+    private final ExpectimaxSearch search;
+
+    /**
+     * Constructor for this.
+     *
+     * @param tableCapacity maximal number of positions remembered between requests
+     */
+    public HintService(int tableCapacity) {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hint-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.search = new ExpectimaxSearch(1, new SplittableRandom().nextLong(), new TranspositionTable(tableCapacity));
+    }
+
+    /**
+     * Requests a move for the current player of passed game. Passed game is copied right away,
+     * so it may be changed as soon as this returns.
+     *
+     * @param game         position to suggest a move in
+     * @param budgetMillis time after which the suggestion is ready, in milliseconds
+     * @return future completed with the suggested move, packed as described in {@link Move}
+     */
+    public CompletableFuture<Integer> suggest(Game game, long budgetMillis) {
+        Game copy = new Game(game);
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+        return CompletableFuture.supplyAsync(() -> search.search(copy, deadline), executor);
+    }
+
+    /**
+     * Stops the searching thread. Requests made afterwards are rejected.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
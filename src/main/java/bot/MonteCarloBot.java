@@ -0,0 +1,367 @@
+package bot;
+
+import game.Game;
+import game.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class is a bot that plays Azul using Monte Carlo Tree Search.
+ * <p>
+ * Search is root-parallel: every worker of this bot's ForkJoinPool grows its own tree
+ * from a copy of the position until the per-move time budget runs out, then visit counts
+ * of the root moves are summed over all trees and the most visited move is played.
+ * Trees only span the current round - drawing tiles for the next round is random,
+ * so positions after a round end are evaluated by random playouts only.
+ */
+public class MonteCarloBot implements Policy {
+    /**
+     * Exploration constant of UCT selection.
+     */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /**
+     * Time that this bot spends on every move, in nanoseconds.
+     */
+    private final long budgetNanos;
+
+    /**
+     * Number of trees searched in parallel.
+     */
+    private final int threads;
+
+    /**
+     * Pool running searching workers.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of playouts made while choosing the last move.
+     */
+    private volatile long lastPlayouts;
+
+    /**
+     * Playouts per second achieved while choosing the last move.
+     */
+    private volatile double lastPlayoutsPerSecond;
+
+    /**
+     * Constructor for this, using all available processors.
+     *
+     * @param budgetMillis time spent on every move, in milliseconds
+     */
+    public MonteCarloBot(long budgetMillis) {
+        this(budgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for this.
+     *
+     * @param budgetMillis time spent on every move, in milliseconds
+     * @param threads      number of trees searched in parallel
+     */
+    public MonteCarloBot(long budgetMillis, int threads) {
+        if (budgetMillis <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Budget and number of threads must be positive");
+        }
+        this.budgetNanos = budgetMillis * 1_000_000;
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Chooses a move for the current player of passed game. Passed game is not modified.
+     *
+     * @param game position to choose a move in
+     * @return chosen move, packed as described in {@link Move}
+     * @throws IllegalStateException if there are no legal moves
+     */
+    @Override
+    public int chooseMove(Game game) {
+        int[] moves = new int[Move.MAX_MOVES];
+        int count = game.legalMoves(moves);
+        if (count == 0) {
+            throw new IllegalStateException("No legal moves");
+        }
+        if (count == 1) {
+            lastPlayouts = 0;
+            lastPlayoutsPerSecond = 0;
+            return moves[0];
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        long seed = new SplittableRandom().nextLong();
+        List<ForkJoinTask<Node>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom random = new SplittableRandom(seed + i);
+            tasks.add(pool.submit(() -> search(game, deadline, random)));
+        }
+
+        // codes of moves fit in 10 bits
+        long[] visits = new long[1 << 10];
+        long playouts = 0;
+        for (ForkJoinTask<Node> task : tasks) {
+            Node root = task.join();
+            playouts += root.visits;
+            for (int i = 0; i < root.childCount; i++) {
+                visits[root.children[i].move] += root.children[i].visits;
+            }
+        }
+        lastPlayouts = playouts;
+        lastPlayoutsPerSecond = playouts * 1e9 / (System.nanoTime() - start);
+
+        int best = moves[0];
+        for (int i = 1; i < count; i++) {
+            if (visits[moves[i]] > visits[best]) {
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Grows a single tree until passed deadline.
+     *
+     * @param game     position to search from
+     * @param deadline value of System.nanoTime() at which the search stops
+     * @param random   source of randomness of this worker
+     * @return root of the grown tree
+     */
+    private static Node search(Game game, long deadline, SplittableRandom random) {
+        int[] buffer = new int[Move.MAX_MOVES];
+        Node root = new Node(null, -1, -1);
+        root.setUntried(buffer, game.legalMoves(buffer));
+        double[] rewards = new double[game.playerCount()];
+
+        do {
+            Game state = new Game(game, random);
+            Node node = root;
+
+            // selection
+            while (node.untriedCount == 0 && node.childCount > 0) {
+                node = node.select();
+                state.apply(node.move);
+            }
+
+            // expansion, limited to the current round
+            if (node.untriedCount > 0) {
+                int move = node.takeUntried(random);
+                int player = state.getCurrentPlayerTurn();
+                int round = state.getRound();
+                state.apply(move);
+                Node child = new Node(node, move, player);
+                if (state.getRound() == round) {
+                    child.setUntried(buffer, state.legalMoves(buffer));
+                }
+                node.add(child);
+                node = child;
+            }
+
+            playout(state, buffer, random);
+            outcome(state, rewards);
+
+            for (; node != null; node = node.parent) {
+                node.visits++;
+                if (node.player >= 0) {
+                    node.reward += rewards[node.player];
+                }
+            }
+        } while (System.nanoTime() < deadline);
+
+        return root;
+    }
+
+    /**
+     * Plays passed game until its end, preferring moves that do not drop tiles on the floor.
+     *
+     * @param state  game to finish
+     * @param buffer buffer for legal moves
+     * @param random source of randomness
+     */
+    static void playout(Game state, int[] buffer, SplittableRandom random) {
+        while (!state.isEndOfGame()) {
+            int count = state.legalMoves(buffer);
+            // move moves to pattern rows to the front
+            int rows = 0;
+            for (int i = 0; i < count; i++) {
+                if (Move.target(buffer[i]) != Move.FLOOR) {
+                    int move = buffer[i];
+                    buffer[i] = buffer[rows];
+                    buffer[rows++] = move;
+                }
+            }
+            state.apply(buffer[random.nextInt(rows > 0 ? rows : count)]);
+        }
+    }
+
+    /**
+     * Calculates rewards of a finished game: winners share a reward of 1.
+     *
+     * @param state   finished game
+     * @param rewards array to fill with every player's reward
+     */
+    static void outcome(Game state, double[] rewards) {
+        int best = Integer.MIN_VALUE;
+        int winners = 0;
+        for (int i = 0; i < rewards.length; i++) {
+            int score = state.getPlayer(i).getScore();
+            if (score > best) {
+                best = score;
+                winners = 1;
+            } else if (score == best) {
+                winners++;
+            }
+        }
+        for (int i = 0; i < rewards.length; i++) {
+            rewards[i] = state.getPlayer(i).getScore() == best ? 1.0 / winners : 0;
+        }
+    }
+
+    /**
+     * Getter for this.lastPlayouts.
+     *
+     * @return number of playouts made while choosing the last move
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Getter for this.lastPlayoutsPerSecond.
+     *
+     * @return playouts per second achieved while choosing the last move
+     */
+    public double getLastPlayoutsPerSecond() {
+        return lastPlayoutsPerSecond;
+    }
+
+    /**
+     * Stops this bot's workers.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Single node of a search tree, representing the position after its move.
+     */
+    private static final class Node {
+        /**
+         * Parent of this node, null for the root.
+         */
+        private final Node parent;
+
+        /**
+         * Move leading to this node, -1 for the root.
+         */
+        private final int move;
+
+        /**
+         * Player who made this.move, -1 for the root.
+         */
+        private final int player;
+
+        /**
+         * Expanded children of this node.
+         */
+        private Node[] children;
+
+        /**
+         * Number of expanded children.
+         */
+        private int childCount;
+
+        /**
+         * Moves not expanded yet.
+         */
+        private int[] untried;
+
+        /**
+         * Number of moves not expanded yet.
+         */
+        private int untriedCount;
+
+        /**
+         * Number of playouts that went through this node.
+         */
+        private int visits;
+
+        /**
+         * Sum of rewards of this.player over all playouts that went through this node.
+         */
+        private double reward;
+
+        /**
+         * Constructor for this.
+         *
+         * @param parent parent of this node
+         * @param move   move leading to this node
+         * @param player player who made the move
+         */
+        private Node(Node parent, int move, int player) {
+            this.parent = parent;
+            this.move = move;
+            this.player = player;
+        }
+
+        /**
+         * Sets moves to expand from this node.
+         *
+         * @param moves buffer holding the moves
+         * @param count number of moves
+         */
+        private void setUntried(int[] moves, int count) {
+            untried = new int[count];
+            System.arraycopy(moves, 0, untried, 0, count);
+            untriedCount = count;
+            children = new Node[count];
+        }
+
+        /**
+         * Removes a random move from the moves not expanded yet.
+         *
+         * @param random source of randomness
+         * @return removed move
+         */
+        private int takeUntried(SplittableRandom random) {
+            int i = random.nextInt(untriedCount);
+            int move = untried[i];
+            untried[i] = untried[--untriedCount];
+            return move;
+        }
+
+        /**
+         * Adds an expanded child.
+         *
+         * @param child to add
+         */
+        private void add(Node child) {
+            children[childCount++] = child;
+        }
+
+        /**
+         * Selects a child using UCT.
+         *
+         * @return selected child
+         */
+        private Node select() {
+            double logVisits = Math.log(visits);
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < childCount; i++) {
+                Node child = children[i];
+                double value = child.reward / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+}
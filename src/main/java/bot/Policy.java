@@ -0,0 +1,19 @@
+package bot;
+
+import game.Game;
+
+/**
+ * This interface represents a way of choosing moves in Azul.
+ * Implementations are not required to be thread-safe.
+ */
+public interface Policy {
+
+    /**
+     * Chooses a move for the current player of passed game. Passed game is not modified.
+     *
+     * @param game position to choose a move in
+     * @return chosen move, packed as described in {@link game.Move}
+     * @throws IllegalStateException if there are no legal moves
+     */
+    int chooseMove(Game game);
+}
@@ -0,0 +1,39 @@
+package bot;
+
+import game.Game;
+import game.Move;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class is a policy choosing uniformly random legal moves.
+ */
+public class RandomPolicy implements Policy {
+    /**
+     * Source of randomness.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Buffer for legal moves.
+     */
+    private final int[] moves = new int[Move.MAX_MOVES];
+
+    /**
+     * Constructor for this.
+     *
+     * @param seed seed of this policy's randomness
+     */
+    public RandomPolicy(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public int chooseMove(Game game) {
+        int count = game.legalMoves(moves);
+        if (count == 0) {
+            throw new IllegalStateException("No legal moves");
+        }
+        return moves[random.nextInt(count)];
+    }
+}
@@ -0,0 +1,214 @@
+package bot;
+
+import game.Game;
+import game.Move;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a fixed-size table of evaluated positions, keyed by {@link Game#getHash()},
+ * which many searching threads can share without locking.
+ * <p>
+ * Every entry is two longs: the position's key XOR-ed with the entry's data, and the data itself.
+ * Writes of different threads may interleave, but a torn entry no longer decodes to its key,
+ * so it is treated as a miss instead of returning data of another position.
+ * Entries are grouped in buckets of two; a new entry replaces the entry of the same position,
+ * otherwise the entry left from an older search, otherwise the shallower one.
+ * <p>
+ * Data of an entry packs the value (32 bits), the best move (10 bits), the searched depth (8 bits),
+ * the bound type (2 bits) and the generation of the search that stored it (8 bits).
+ */
+public class TranspositionTable {
+    /**
+     * Bound type of a value that is exact.
+     */
+    public static final int EXACT = 1;
+
+    /**
+     * Bound type of a value that is a lower bound of the exact value.
+     */
+    public static final int LOWER = 2;
+
+    /**
+     * Bound type of a value that is an upper bound of the exact value.
+     */
+    public static final int UPPER = 3;
+
+    /**
+     * Number of entries in one bucket.
+     */
+    private static final int BUCKET = 2;
+
+    /**
+     * Keys and data of all entries, two longs per entry.
+     */
+    private final AtomicLongArray entries;
+
+    /**
+     * Mask selecting a bucket from a key.
+     */
+    private final int mask;
+
+    /**
+     * Generation of the current search, stored with every entry.
+     */
+    private volatile int generation;
+
+    /**
+     * Constructor for this.
+     *
+     * @param capacity maximal number of stored positions, rounded down to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity < BUCKET || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Capacity must be between " + BUCKET + " and " + (1 << 28));
+        }
+        int buckets = Integer.highestOneBit(capacity) / BUCKET;
+        this.entries = new AtomicLongArray(buckets * BUCKET * 2);
+        this.mask = buckets - 1;
+    }
+
+    /**
+     * Looks up passed position.
+     *
+     * @param key hash of the position
+     * @return data of the position's entry, or 0 if the position is not stored
+     */
+    public long probe(long key) {
+        int index = index(key);
+        for (int i = index; i < index + BUCKET * 2; i += 2) {
+            long data = entries.getOpaque(i + 1);
+            if (data != 0 && (entries.getOpaque(i) ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores an evaluated position. An entry of the same position is only replaced
+     * if the new one is exact or not shallower.
+     *
+     * @param key   hash of the position
+     * @param value value of the position
+     * @param move  best move found in the position, packed as described in {@link Move}
+     * @param depth depth the position was searched to, between 0 and 255
+     * @param bound type of the value's bound, one of {@link #EXACT}, {@link #LOWER} and {@link #UPPER}
+     */
+    public void store(long key, float value, int move, int depth, int bound) {
+        if (bound < EXACT || bound > UPPER) {
+            throw new IllegalArgumentException("Invalid bound type");
+        }
+        int generation = this.generation;
+        long data = Integer.toUnsignedLong(Float.floatToRawIntBits(value))
+                | (long) (move & 0x3FF) << 32
+                | (long) Math.min(Math.max(depth, 0), 255) << 42
+                | (long) bound << 50
+                | (long) generation << 52;
+
+        int index = index(key);
+        int victim = -1;
+        int victimWorth = Integer.MAX_VALUE;
+        for (int i = index; i < index + BUCKET * 2; i += 2) {
+            long old = entries.getOpaque(i + 1);
+            if (old != 0 && (entries.getOpaque(i) ^ old) == key) {
+                if (bound != EXACT && depth < depth(old) && generation(old) == generation) return;
+                victim = i;
+                break;
+            }
+            // entries of older searches are worth less than any entry of the current one
+            int worth = old == 0 ? -1 : depth(old) + (generation(old) == generation ? 256 : 0);
+            if (worth < victimWorth) {
+                victim = i;
+                victimWorth = worth;
+            }
+        }
+        entries.setOpaque(victim, key ^ data);
+        entries.setOpaque(victim + 1, data);
+    }
+
+    /**
+     * Starts a new search, so that entries of previous searches get replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.setOpaque(i, 0);
+        }
+    }
+
+    /**
+     * Gets maximal number of stored positions.
+     *
+     * @return capacity of this table
+     */
+    public int capacity() {
+        return entries.length() / 2;
+    }
+
+    /**
+     * Gets index of the first entry of passed key's bucket.
+     *
+     * @param key hash of a position
+     * @return index in this.entries
+     */
+    private int index(long key) {
+        return ((int) (key ^ key >>> 32) & mask) * BUCKET * 2;
+    }
+
+    /**
+     * Gets the value stored in an entry.
+     *
+     * @param data data of the entry
+     * @return value of the position
+     */
+    public static float value(long data) {
+        return Float.intBitsToFloat((int) data);
+    }
+
+    /**
+     * Gets the best move stored in an entry.
+     *
+     * @param data data of the entry
+     * @return move packed as described in {@link Move}
+     */
+    public static int move(long data) {
+        return (int) (data >>> 32) & 0x3FF;
+    }
+
+    /**
+     * Gets the depth stored in an entry.
+     *
+     * @param data data of the entry
+     * @return depth the position was searched to
+     */
+    public static int depth(long data) {
+        return (int) (data >>> 42) & 0xFF;
+    }
+
+    /**
+     * Gets the bound type stored in an entry.
+     *
+     * @param data data of the entry
+     * @return one of {@link #EXACT}, {@link #LOWER} and {@link #UPPER}
+     */
+    public static int bound(long data) {
+        return (int) (data >>> 50) & 0x3;
+    }
+
+    /**
+     * Gets generation of the search that stored an entry.
+     *
+     * @param data data of the entry
+     * @return generation of the search
+     */
+    private static int generation(long data) {
+        return (int) (data >>> 52) & 0xFF;
+    }
+}
@@ -0,0 +1,326 @@
+package communication;
+
+import game.Game;
+
+import java.io.*;
+import java.util.EnumMap;
+
+/**
+ * This class encodes Protocols in the compact binary wire format, sent in frames (see {@link Frames})
+ * once a client negotiated it with {@link Header#CONNECT}. Every header has a schema: a list of fields,
+ * each with a key and a type. A payload is the header's ordinal as a byte, a byte with bit i set for every
+ * present field i of the schema (omitted if the schema is empty) and the values of the present fields in the
+ * schema's order:
+ * <ul>
+ *     <li>ints as zigzag varints, so small ones take a byte, and arrays of ints as their length and elements,
+ *     varints each,</li>
+ *     <li>strings as modified UTF-8 preceded by their length as a short,</li>
+ *     <li>headers as their ordinal and flags as a boolean, a byte each,</li>
+ *     <li>games as written by {@link Game#write(DataOutput)},</li>
+ *     <li>user data as the username, the password hash, the number of unfinished games as a varint
+ *     and the games.</li>
+ * </ul>
+ * Unlike serialization, no class descriptors, keys or boxed values are sent, so a message takes a few bytes
+ * and a game update about 150 instead of several kilobytes; an update carrying a move instead of the game
+ * (see {@link GameHandler}) takes about 10.
+ */
+final class BinaryCodec {
+    /**
+     * Version of the format, sent with {@link Header#CONNECT} and {@link Header#CONNECTED}.
+     * Version 2 added sequence numbers of updates, updates carrying a move instead of the game
+     * and {@link Header#SYNCGAME}; version 3 sends a player's seat in {@link Header#SEAT}
+     * before a game sent to all players.
+     */
+    static final int VERSION = 3;
+
+    /**
+     * All headers, indexed by their ordinal.
+     */
+    private static final Header[] HEADERS = Header.values();
+
+    /**
+     * Types of values of fields.
+     */
+    private enum Type {
+        INT, INTS, STRING, HEADER, FLAG, GAME, USERDATA
+    }
+
+    /**
+     * Field of a schema.
+     */
+    private static final class Field {
+        /**
+         * Key of the field in Protocol's data.
+         */
+        final String key;
+
+        /**
+         * Type of the field's value.
+         */
+        final Type type;
+
+        /**
+         * Constructor for this.
+         *
+         * @param key  key of the field in Protocol's data
+         * @param type type of the field's value
+         */
+        Field(String key, Type type) {
+            this.key = key;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Schemas of all headers; headers without data have empty ones.
+     */
+    private static final EnumMap<Header, Field[]> SCHEMAS = new EnumMap<>(Header.class);
+
+    static {
+        for (Header header : HEADERS) {
+            SCHEMAS.put(header, new Field[0]);
+        }
+        Field username = new Field("username", Type.STRING);
+        Field passwordHash = new Field("passwordHash", Type.STRING);
+        Field userdata = new Field("userdata", Type.USERDATA);
+        Field code = new Field("code", Type.STRING);
+        Field game = new Field("game", Type.GAME);
+        Field id = new Field("id", Type.INT);
+        Field creator = new Field("creator", Type.STRING);
+        Field seq = new Field("seq", Type.INT);
+        Field move = new Field("move", Type.INT);
+
+        SCHEMAS.put(Header.CONNECT, new Field[]{new Field("codec", Type.INT)});
+        SCHEMAS.put(Header.CONNECTED, new Field[]{id, new Field("codec", Type.INT)});
+        SCHEMAS.put(Header.REGISTER, new Field[]{username, passwordHash});
+        SCHEMAS.put(Header.LOGIN, new Field[]{username, passwordHash});
+        SCHEMAS.put(Header.REGISTERED, new Field[]{userdata});
+        SCHEMAS.put(Header.LOGGEDIN, new Field[]{userdata});
+        SCHEMAS.put(Header.LOGGEDOUT, new Field[]{userdata});
+        SCHEMAS.put(Header.CREATEGAME, new Field[]{game});
+        SCHEMAS.put(Header.CREATEDGAME, new Field[]{code});
+        SCHEMAS.put(Header.JOINGAME, new Field[]{code});
+        SCHEMAS.put(Header.JOINEDGAME, new Field[]{creator});
+        SCHEMAS.put(Header.PLAYERJOINED, new Field[]{username});
+        SCHEMAS.put(Header.STARTEDGAME, new Field[]{id, creator, game, seq});
+        SCHEMAS.put(Header.GAMEUPDATED, new Field[]{id, creator, game, seq, move,
+                new Field("tiles", Type.INTS), new Field("check", Type.INT)});
+        SCHEMAS.put(Header.MOVE, new Field[]{move});
+        SCHEMAS.put(Header.SEAT, new Field[]{id});
+        SCHEMAS.put(Header.LEAVEGAME, new Field[]{username, game});
+        SCHEMAS.put(Header.LEAVELOBBY, new Field[]{username, new Field("creator", Type.FLAG)});
+        SCHEMAS.put(Header.FAIL, new Field[]{new Field("source", Type.HEADER), new Field("dialog", Type.STRING)});
+    }
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes passed Protocol into a frame. Fields holding null are not sent.
+     *
+     * @param message Protocol to encode
+     * @return the frame, length prefix included
+     * @throws IllegalArgumentException if the message holds a field not in its header's schema,
+     *                                  a value of a wrong type or is too big
+     */
+    static byte[] encode(Protocol message) {
+        Field[] schema = SCHEMAS.get(message.header);
+        int present = 0;
+        for (int i = 0; i < schema.length; i++) {
+            if (message.data.get(schema[i].key) != null) present |= 1 << i;
+        }
+        if (Integer.bitCount(present) != message.data.size()) {
+            for (String key : message.data.keySet()) {
+                if (message.data.get(key) != null && indexOf(schema, key) < 0) {
+                    throw new IllegalArgumentException("Field " + key + " is not part of " + message.header);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = Frames.open();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(message.header.ordinal());
+            if (schema.length != 0) out.writeByte(present);
+            for (int i = 0; i < schema.length; i++) {
+                if ((present & 1 << i) != 0) write(out, schema[i], message.data.get(schema[i].key));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by a byte array
+        }
+        return Frames.seal(bytes);
+    }
+
+    /**
+     * Decodes a binary payload of a frame.
+     *
+     * @param buffer array holding the payload
+     * @param offset offset of the payload
+     * @param size   payload's length
+     * @return decoded Protocol
+     * @throws IOException when the payload is not a valid Protocol
+     */
+    static Protocol decode(byte[] buffer, int offset, int size) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(buffer, offset, size);
+        DataInputStream in = new DataInputStream(bytes);
+        try {
+            Protocol message = new Protocol(readHeader(in));
+            Field[] schema = SCHEMAS.get(message.header);
+            int present = schema.length == 0 ? 0 : in.readUnsignedByte();
+            if (present >>> schema.length != 0) {
+                throw new IOException("Unknown fields of " + message.header);
+            }
+            for (int i = 0; i < schema.length; i++) {
+                if ((present & 1 << i) != 0) message.put(schema[i].key, read(in, schema[i]));
+            }
+            if (bytes.available() != 0) {
+                throw new IOException(bytes.available() + " bytes left after " + message.header);
+            }
+            return message;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid payload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds a field in a schema.
+     *
+     * @param schema schema to search
+     * @param key    field's key
+     * @return field's index, -1 if the schema has no such field
+     */
+    private static int indexOf(Field[] schema, String key) {
+        for (int i = 0; i < schema.length; i++) {
+            if (schema[i].key.equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a value of a field.
+     *
+     * @param out   output to write to
+     * @param field field to write
+     * @param value field's value
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the value is not of the field's type
+     */
+    private static void write(DataOutputStream out, Field field, Object value) throws IOException {
+        try {
+            switch (field.type) {
+                case INT -> writeVarInt(out, (Integer) value);
+                case INTS -> {
+                    int[] values = (int[]) value;
+                    writeVarInt(out, values.length);
+                    for (int element : values) {
+                        writeVarInt(out, element);
+                    }
+                }
+                case STRING -> out.writeUTF((String) value);
+                case HEADER -> out.writeByte(((Header) value).ordinal());
+                case FLAG -> out.writeBoolean((Boolean) value);
+                case GAME -> ((Game) value).write(out);
+                case USERDATA -> {
+                    UserData userData = (UserData) value;
+                    out.writeUTF(userData.getUsername());
+                    out.writeUTF(userData.getPasswordHash());
+                    writeVarInt(out, userData.getUnfinishedGames().size());
+                    for (Game game : userData.getUnfinishedGames()) {
+                        game.write(out);
+                    }
+                }
+            }
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Field " + field.key + " is not of type " + field.type, e);
+        }
+    }
+
+    /**
+     * Reads a value of a field.
+     *
+     * @param in    input to read from
+     * @param field field to read
+     * @return field's value
+     * @throws IOException when I/O error occurs or the value is not valid
+     */
+    private static Object read(DataInputStream in, Field field) throws IOException {
+        return switch (field.type) {
+            case INT -> readVarInt(in);
+            case INTS -> {
+                int length = readVarInt(in);
+                if (length < 0 || length > in.available()) {
+                    throw new IOException("Invalid length " + length + " of " + field.key);
+                }
+                int[] values = new int[length];
+                for (int i = 0; i < length; i++) {
+                    values[i] = readVarInt(in);
+                }
+                yield values;
+            }
+            case STRING -> in.readUTF();
+            case HEADER -> readHeader(in);
+            case FLAG -> in.readBoolean();
+            case GAME -> Game.read(in);
+            case USERDATA -> {
+                UserData userData = new UserData(in.readUTF(), in.readUTF());
+                int games = readVarInt(in);
+                for (int i = 0; i < games; i++) {
+                    userData.addUnfinishedGame(Game.read(in));
+                }
+                yield userData;
+            }
+        };
+    }
+
+    /**
+     * Reads a header written as its ordinal.
+     *
+     * @param in input to read from
+     * @return read header
+     * @throws IOException when I/O error occurs or the header is unknown
+     */
+    private static Header readHeader(DataInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= HEADERS.length) {
+            throw new IOException("Unknown header " + ordinal);
+        }
+        return HEADERS[ordinal];
+    }
+
+    /**
+     * Writes an int as a zigzag varint: 7 bits a byte, the lowest first, the highest bit set on all but the last.
+     *
+     * @param out   output to write to
+     * @param value value to write
+     * @throws IOException when I/O error occurs
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        int bits = value << 1 ^ value >> 31;
+        while ((bits & ~0x7F) != 0) {
+            out.writeByte(bits & 0x7F | 0x80);
+            bits >>>= 7;
+        }
+        out.writeByte(bits);
+    }
+
+    /**
+     * Reads an int written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param in input to read from
+     * @return read value
+     * @throws IOException when I/O error occurs or the varint is too long
+     */
+    private static int readVarInt(DataInput in) throws IOException {
+        int bits = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            bits |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return bits >>> 1 ^ -(bits & 1);
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -0,0 +1,56 @@
+package communication;
+
+/**
+ * This class represents a message sent to many clients. It is encoded once for every format its recipients take,
+ * and every recipient is sent the same frame, so that sending it costs the same whatever the number of recipients.
+ * The message must not change until every recipient was sent it.
+ */
+final class Broadcast {
+    /**
+     * Message to send.
+     */
+    private final Protocol message;
+
+    /**
+     * Frames of the message, indexed by their format's ordinal; null if not encoded yet. Never changed once encoded.
+     */
+    private final byte[][] frames = new byte[FrameFormat.values().length][];
+
+    /**
+     * Constructor for this.
+     *
+     * @param message message to send
+     */
+    Broadcast(Protocol message) {
+        this.message = message;
+    }
+
+    /**
+     * Getter for this.message.
+     *
+     * @return message to send
+     */
+    Protocol getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the frame of the message in passed format, encoding it if no recipient took the format before.
+     *
+     * @param format format of the frame
+     * @return the frame, length prefix included; not to be changed
+     * @throws IllegalArgumentException if the message can not be encoded
+     */
+    synchronized byte[] frame(FrameFormat format) {
+        byte[] frame = frames[format.ordinal()];
+        if (frame == null) {
+            frames[format.ordinal()] = frame = format.encode(message);
+        }
+        return frame;
+    }
+
+    @Override
+    public String toString() {
+        return message.toString();
+    }
+}
@@ -7,14 +7,13 @@ import GUIs.Controllers.ProfileController;
 import game.Game;
 import javafx.application.Platform;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class is a controller for the modeled Client - user of Azul.
@@ -31,9 +30,35 @@ public class ClientController implements Runnable {
      */
     private ObjectInputStream input;
     /**
-     * Socket's output stream.
+     * Socket's output stream, serialized unless the Server uses frames or the binary codec was negotiated.
      */
-    private ObjectOutputStream output;
+    private MessageOutput output;
+
+    /**
+     * Socket's input stream, if the Server uses the framed wire format.
+     */
+    private DataInputStream frameInput;
+
+
+    /**
+     * Copy of the game being played, kept up to date by updates from the Server; null if the whole game is awaited.
+     */
+    private Game game;
+
+    /**
+     * Creator of the game being played.
+     */
+    private String gameCreator;
+
+    /**
+     * Id of this Client in the game being played, sent with the game or in {@link Header#SEAT} before it.
+     */
+    private int seat;
+
+    /**
+     * Sequence number of the last update of the game being played.
+     */
+    private int sequence;
 
     /**
      * Client's model containing their data.
@@ -94,8 +119,32 @@ public class ClientController implements Runnable {
         }
 
         try {
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            // the Server speaks first: a framed Server sends Frames.MAGIC, an object stream starts with its header
+            BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+            in.mark(4);
+            if (new DataInputStream(in).readInt() == Frames.MAGIC) {
+                frameInput = new DataInputStream(in);
+                output = new MessageOutput(socket.getOutputStream(), FrameFormat.SERIALIZED);
+            } else {
+                in.reset();
+                output = new MessageOutput(socket.getOutputStream(), ResetPolicy.EVERY_MESSAGE);
+                input = new ObjectInputStream(in);
+            }
+
+            // a Server that does not know the binary codec answers without one and the connection stays as it is
+            Protocol connect = new Protocol(Header.CONNECT);
+            connect.put("codec", BinaryCodec.VERSION);
+            send(connect);
+            Protocol connected = receive();
+            if (connected == null || connected.header != Header.CONNECTED) {
+                throw new IOException("Unexpected answer " + connected);
+            }
+            if (connected.data.get("codec") instanceof Integer) {
+                if (frameInput == null) { // the object streams read no further than the answer
+                    frameInput = new DataInputStream(in);
+                }
+                output.useFrames(null, FrameFormat.BINARY);
+            }
         } catch (IOException ex) {
             socket.close();
             throw new Exception("Can not get input/output connection stream.");
@@ -193,7 +242,14 @@ public class ClientController implements Runnable {
                 profileView();
             }
             case CREATEDGAME -> creatorView(getUsername(), (String) command.data.get("code"));
-            case STARTEDGAME, GAMEUPDATED -> gameView((Game) command.data.get("game"), (String) command.data.get("creator"), (int) command.data.get("id"));
+            case SEAT -> seat = (int) command.data.get("id");
+            case STARTEDGAME, GAMEUPDATED -> {
+                if (command.data.containsKey("game")) {
+                    setGame(command);
+                } else {
+                    applyUpdate(command);
+                }
+            }
             case JOINEDGAME -> lobbyView((String) command.data.get("creator"));
             case LEAVEGAME -> {
                 String whoLeft = (String) command.data.get("username");
@@ -364,6 +420,51 @@ public class ClientController implements Runnable {
         }
     }
 
+    /**
+     * Replaces the copy of the game being played with the game sent by the Server and displays it.
+     *
+     * @param update message carrying the game
+     */
+    private void setGame(Protocol update) {
+        game = (Game) update.data.get("game");
+        if (update.data.containsKey("creator")) gameCreator = (String) update.data.get("creator");
+        if (update.data.containsKey("id")) seat = (int) update.data.get("id");
+        if (update.data.containsKey("seq")) sequence = (int) update.data.get("seq");
+        gameView(new Game(game), gameCreator, seat); // the view makes moves on its own copy
+    }
+
+    /**
+     * Applies a move sent by the Server to the copy of the game being played and displays the result.
+     * A move ending a round comes with the tiles refilling the workshops, which the copy can not draw
+     * itself without the game's seed. An update out of order, or one after which the copy differs from
+     * the Server's game, makes this ask for the whole game instead.
+     *
+     * @param update message carrying the move
+     */
+    private void applyUpdate(Protocol update) {
+        if (game == null) return; // the whole game is on its way
+        boolean synced = false;
+        if (update.data.get("seq") instanceof Integer seq && seq == sequence + 1
+                && update.data.get("move") instanceof Integer move && game.isLegal(move)) {
+            int[] tiles = (int[]) update.data.get("tiles");
+            try {
+                game.apply(move, tiles);
+                synced = (tiles == null || Arrays.equals(tiles, game.getWorkshopStates()))
+                        && Integer.valueOf(GameHandler.checksum(game)).equals(update.data.get("check"));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid update: " + e.getMessage());
+            }
+        }
+        if (!synced) {
+            System.err.println("Game out of sync, requesting the whole game");
+            game = null;
+            send(new Protocol(Header.SYNCGAME));
+            return;
+        }
+        sequence++;
+        gameView(new Game(game), gameCreator, seat);
+    }
+
     /**
      * Prompts new GameView window.
      *
@@ -442,12 +543,11 @@ public class ClientController implements Runnable {
      * @param command to send
      */
     public void send(Protocol command) {
-        if (output != null) {
-            try {
-                output.writeObject(command);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (output == null) return;
+        try {
+            output.send(command);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -458,6 +558,9 @@ public class ClientController implements Runnable {
      * @throws IOException when I/O error occurs
      */
     public Protocol receive() throws IOException {
+        if (frameInput != null) {
+            return Frames.read(frameInput);
+        }
         try {
             return (Protocol) input.readObject();
         } catch (ClassNotFoundException e) {
@@ -473,7 +576,11 @@ public class ClientController implements Runnable {
      */
     private void close() throws IOException {
         output.close();
-        input.close();
+        if (frameInput != null) {
+            frameInput.close();
+        } else {
+            input.close();
+        }
         socket.close();
     }
 
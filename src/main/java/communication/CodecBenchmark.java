@@ -0,0 +1,215 @@
+package communication;
+
+import bot.GreedyPolicy;
+import bot.Policy;
+import game.Game;
+import game.Move;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class compares the serialized wire format of Protocols with {@link BinaryCodec}: for every kind of
+ * typical message it prints the size of its frame and the time of encoding and decoding it in both formats.
+ * Every message is encoded and decoded repeatedly for a while before it is timed, so that both formats are
+ * measured compiled; decoded messages are kept in a sink, so that no work is optimized away.
+ * <p>
+ * Usage: {@code CodecBenchmark [--iterations N]}.
+ */
+public class CodecBenchmark {
+    /**
+     * Number of encodings and decodings of every message made before timing.
+     */
+    private static final int WARMUP_ITERATIONS = 20_000;
+
+    /**
+     * Number of timed encodings and decodings of every message.
+     */
+    private final int iterations;
+
+    /**
+     * Sum of hashes of decoded messages, printed so that no decoding is optimized away.
+     */
+    private long sink;
+
+    /**
+     * Constructor for this.
+     *
+     * @param iterations number of timed encodings and decodings of every message
+     */
+    public CodecBenchmark(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Encoder of a wire format.
+     */
+    private interface Encoder {
+        byte[] encode(Protocol message);
+    }
+
+    /**
+     * Decoder of a wire format, given a frame with its length prefix.
+     */
+    private interface Decoder {
+        Protocol decode(byte[] frame) throws IOException;
+    }
+
+    /**
+     * Builds the compared messages.
+     *
+     * @return messages by their names
+     */
+    private static Map<String, Protocol> messages() {
+        Map<String, Protocol> messages = new LinkedHashMap<>();
+
+        Protocol move = new Protocol(Header.MOVE);
+        move.put("move", 0x2F3);
+        messages.put("MOVE", move);
+
+        Protocol login = new Protocol(Header.LOGIN);
+        login.put("username", "player1");
+        login.put("passwordHash", "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8");
+        messages.put("LOGIN", login);
+
+        Protocol fail = new Protocol(Header.FAIL);
+        fail.put("source", Header.JOINGAME);
+        fail.put("dialog", "Game is full!");
+        messages.put("FAIL", fail);
+
+        for (int players : new int[]{2, 4}) {
+            Protocol update = new Protocol(Header.GAMEUPDATED);
+            update.put("id", 1);
+            update.put("creator", "player1");
+            update.put("game", midGame(players));
+            messages.put("GAMEUPDATED " + players + "p", update);
+        }
+
+        Game game = midGame(4);
+        int[] moves = new int[Move.MAX_MOVES];
+        game.legalMoves(moves);
+        game.apply(moves[0]);
+        Protocol delta = new Protocol(Header.GAMEUPDATED);
+        delta.put("seq", 42);
+        delta.put("move", moves[0]);
+        delta.put("check", GameHandler.checksum(game));
+        messages.put("GAMEUPDATED move", delta);
+
+        UserData userData = new UserData("player1", "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8");
+        for (int i = 0; i < 3; i++) {
+            Game saved = midGame(2 + i);
+            saved.setWhenSaved("2024-01-0" + (i + 1) + " 12:00");
+            userData.addUnfinishedGame(saved);
+        }
+        Protocol loggedIn = new Protocol(Header.LOGGEDIN);
+        loggedIn.put("userdata", userData);
+        messages.put("LOGGEDIN 3 games", loggedIn);
+        return messages;
+    }
+
+    /**
+     * Plays a game with greedy players until the middle of its third round.
+     *
+     * @param players number of players
+     * @return the game
+     */
+    private static Game midGame(int players) {
+        ArrayList<String> usernames = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            usernames.add("player" + (i + 1));
+        }
+        Game game = new Game(players, usernames, players);
+        Policy policy = new GreedyPolicy(players);
+        while (game.getRound() < 3 || game.getMiddleSize() < 4) {
+            game.apply(policy.chooseMove(game));
+        }
+        return game;
+    }
+
+    /**
+     * Measures all messages in both formats, printing a row of results for each.
+     *
+     * @param out stream to print to
+     * @throws IOException when a frame can not be decoded
+     */
+    public void run(PrintStream out) throws IOException {
+        out.printf("%-18s %10s %10s %12s %12s %12s %12s%n", "message",
+                "java B", "binary B", "java enc ns", "binary enc", "java dec ns", "binary dec");
+        for (Map.Entry<String, Protocol> entry : messages().entrySet()) {
+            Protocol message = entry.getValue();
+            byte[] javaFrame = Frames.encode(message);
+            byte[] binaryFrame = BinaryCodec.encode(message);
+            out.printf("%-18s %10d %10d %12.0f %12.0f %12.0f %12.0f%n", entry.getKey(),
+                    javaFrame.length, binaryFrame.length,
+                    timeEncoding(Frames::encode, message), timeEncoding(BinaryCodec::encode, message),
+                    timeDecoding(frame -> Frames.decode(frame, 4, frame.length - 4), javaFrame),
+                    timeDecoding(frame -> BinaryCodec.decode(frame, 4, frame.length - 4), binaryFrame));
+        }
+        out.println("sink " + sink);
+    }
+
+    /**
+     * Times encoding of a message.
+     *
+     * @param encoder encoder of the format
+     * @param message message to encode
+     * @return average time of an encoding, in nanoseconds
+     */
+    private double timeEncoding(Encoder encoder, Protocol message) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += encoder.encode(message).length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += encoder.encode(message).length;
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    /**
+     * Times decoding of a frame.
+     *
+     * @param decoder decoder of the format
+     * @param frame   frame to decode
+     * @return average time of a decoding, in nanoseconds
+     * @throws IOException when the frame can not be decoded
+     */
+    private double timeDecoding(Decoder decoder, byte[] frame) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += decoder.decode(frame).data.size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += decoder.decode(frame).data.size();
+        }
+        return (double) (System.nanoTime() - start) / iterations;
+    }
+
+    /**
+     * Main method to run the benchmark.
+     *
+     * @param args options of the benchmark, see {@link CodecBenchmark}
+     */
+    public static void main(String[] args) {
+        int iterations = 100_000;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].equals("--iterations")) {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                iterations = Integer.parseInt(args[i + 1]);
+            }
+            new CodecBenchmark(iterations).run(System.out);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: CodecBenchmark [--iterations N]");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error decoding a frame: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package communication;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the engines of {@link Server} under many simulated clients. For every engine and
+ * number of clients a server is started in a separate JVM; this JVM connects the clients one by one,
+ * each logging in with wrong credentials once, then measures the server's memory, threads and bytes retained
+ * by streams of its clients (see {@link MessageOutput}) while all clients stay connected, the longest time
+ * an answer waited in an {@link OutboundQueue}, and the round-trip time of requests of randomly chosen clients.
+ * <p>
+ * Usage: {@code ConnectionBenchmark [--engines thread,virtual,nio] [--clients 1000,10000,50000]
+ * [--port P] [--samples S]}. Every client takes a file descriptor in both JVMs, so the open files limit
+ * ({@code ulimit -n}) must exceed the number of clients; a run that can not connect all its clients
+ * reports how many it reached.
+ */
+public class ConnectionBenchmark {
+    /**
+     * Line printed by the server JVM once it accepts connections.
+     */
+    private static final String READY = "READY";
+
+    /**
+     * Time a client waits for a connection or an answer before giving up, in milliseconds.
+     */
+    private static final int TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * Time to wait for the server JVM's statistics, in milliseconds.
+     */
+    private static final int STATS_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * Engines to compare.
+     */
+    private final String[] engines;
+
+    /**
+     * Numbers of clients to compare at.
+     */
+    private final int[] clientCounts;
+
+    /**
+     * Port of the first server; every run uses the next port, so that none waits for the previous one's to be freed.
+     */
+    private final int port;
+
+    /**
+     * Number of runs started so far.
+     */
+    private int runs;
+
+    /**
+     * Number of timed requests of every run.
+     */
+    private final int samples;
+
+    /**
+     * Constructor for this.
+     *
+     * @param engines      engines to compare
+     * @param clientCounts numbers of clients to compare at
+     * @param port         port of the first server
+     * @param samples      number of timed requests of every run
+     */
+    public ConnectionBenchmark(String[] engines, int[] clientCounts, int port, int samples) {
+        this.engines = engines;
+        this.clientCounts = clientCounts;
+        this.port = port;
+        this.samples = samples;
+    }
+
+    /**
+     * A simulated client, speaking the wire format of its server's engine.
+     */
+    private static class Client implements Closeable {
+        /**
+         * Socket connected to the server.
+         */
+        private final Socket socket;
+
+        /**
+         * Object streams of a blocking engine, null for the framed one.
+         */
+        private ObjectOutputStream objectOutput;
+        private ObjectInputStream objectInput;
+
+        /**
+         * Input of the framed engine, null for blocking ones.
+         */
+        private DataInputStream frameInput;
+
+        /**
+         * Connects to a server.
+         *
+         * @param port   server's port
+         * @param framed true if the server uses the framed wire format
+         * @throws IOException when I/O error occurs
+         */
+        Client(int port, boolean framed) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress("localhost", port), TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(TIMEOUT_MILLIS); // a server out of file descriptors leaves connections unanswered
+            if (framed) {
+                frameInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (frameInput.readInt() != Frames.MAGIC) {
+                    throw new IOException("Server is not framed");
+                }
+            } else {
+                objectOutput = new ObjectOutputStream(socket.getOutputStream());
+                objectInput = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            }
+        }
+
+        /**
+         * Sends a request and waits for the answer.
+         *
+         * @param request request to send
+         * @return received answer
+         * @throws IOException when I/O error occurs
+         */
+        Protocol request(Protocol request) throws IOException {
+            if (frameInput != null) {
+                socket.getOutputStream().write(Frames.encode(request));
+                return Frames.read(frameInput);
+            }
+            objectOutput.writeObject(request);
+            objectOutput.reset();
+            try {
+                return (Protocol) objectInput.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs all combinations of engines and numbers of clients, printing a row of results for each.
+     *
+     * @param out stream to print to
+     * @throws IOException when the server JVM can not be started
+     */
+    public void run(PrintStream out) throws IOException {
+        out.printf("%-8s %8s %10s %12s %10s %10s %12s %12s %10s %10s%n", "engine", "clients", "connected",
+                "connects/s", "heap MB", "threads", "retained KB", "max queue us", "p50 us", "p99 us");
+        for (String engine : engines) {
+            for (int clients : clientCounts) {
+                out.println(run(engine, clients));
+            }
+        }
+    }
+
+    /**
+     * Runs a single combination.
+     *
+     * @param engine  engine of the server
+     * @param clients number of clients
+     * @return row of results
+     * @throws IOException when the server JVM can not be started
+     */
+    private String run(String engine, int clients) throws IOException {
+        int port = this.port + runs++;
+        Process server = new ProcessBuilder(
+                ProcessHandle.current().info().command().orElse("java"),
+                "-cp", System.getProperty("java.class.path"),
+                ConnectionBenchmark.class.getName(), "--serve", engine, String.valueOf(port))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        BufferedReader serverOut = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        PrintStream serverIn = new PrintStream(server.getOutputStream(), true);
+        List<Client> connected = new ArrayList<>(clients);
+        try {
+            String line;
+            while ((line = serverOut.readLine()) != null && !line.equals(READY)) {
+                // skip until the server is ready
+            }
+            if (line == null) {
+                return String.format("%-8s %8d  server failed to start", engine, clients);
+            }
+
+            boolean framed = engine.equals("nio");
+            Protocol login = new Protocol(Header.LOGIN);
+            login.put("username", "benchmark");
+            login.put("passwordHash", "");
+            long start = System.nanoTime();
+            try {
+                while (connected.size() < clients) {
+                    Client client = new Client(port, framed);
+                    connected.add(client);
+                    client.request(login);
+                }
+            } catch (IOException | OutOfMemoryError e) {
+                // limit of the host reached
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            serverIn.println("stats");
+            String stats = readLine(serverOut);
+            if (stats == null) {
+                return String.format("%-8s %8d %10d  server unresponsive", engine, clients, connected.size());
+            }
+            long heap = Long.parseLong(stats.split(" ")[0]);
+            String threads = stats.split(" ")[1];
+            long retained = Long.parseLong(stats.split(" ")[2]);
+            long queued = Long.parseLong(stats.split(" ")[3]);
+
+            long[] times = new long[connected.isEmpty() ? 0 : samples];
+            SplittableRandom random = new SplittableRandom(clients);
+            try {
+                for (int i = 0; i < times.length; i++) {
+                    Client client = connected.get(random.nextInt(connected.size()));
+                    long sent = System.nanoTime();
+                    client.request(login);
+                    times[i] = System.nanoTime() - sent;
+                }
+            } catch (IOException e) {
+                times = new long[0];
+            }
+            Arrays.sort(times);
+
+            return String.format("%-8s %8d %10d %12.0f %10.1f %10s %12.1f %12d %10s %10s", engine, clients,
+                    connected.size(), connected.size() / seconds, heap / 1e6, threads, retained / 1e3, queued / 1000,
+                    times.length == 0 ? "-" : String.valueOf(times[times.length / 2] / 1000),
+                    times.length == 0 ? "-" : String.valueOf(times[times.length * 99 / 100] / 1000));
+        } finally {
+            for (Client client : connected) {
+                client.close();
+            }
+            serverIn.println("exit");
+            try {
+                if (!server.waitFor(10, TimeUnit.SECONDS)) {
+                    server.destroyForcibly().waitFor(); // its threads must be gone before the next run starts
+                }
+            } catch (InterruptedException e) {
+                server.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads a line from a server JVM, which may hang once the host runs out of threads.
+     *
+     * @param input standard output of the server JVM
+     * @return read line, null if none came in time
+     * @throws IOException when I/O error occurs
+     */
+    private static String readLine(BufferedReader input) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STATS_TIMEOUT_MILLIS);
+        while (!input.ready()) {
+            if (System.nanoTime() > deadline) return null;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return input.readLine();
+    }
+
+    /**
+     * Runs a server in this JVM and answers "stats" lines on the standard input with the heap used
+     * after a garbage collection, in bytes, the number of live platform threads, the number of bytes
+     * retained by streams of clients and the longest time a message waited to be written, in nanoseconds,
+     * until "exit".
+     *
+     * @param engine engine of the server
+     * @param port   port of the server
+     * @throws IOException when the port is in use or the standard input can not be read
+     */
+    private static void serve(String engine, int port) throws IOException {
+        new ServerSocket(port).close(); // Server only reports a port in use, and READY must not be printed then
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Properties props = new Properties();
+        props.put("port", String.valueOf(port));
+        props.put("engine", engine);
+        // loaded before the clients connect, as loading needs file descriptors
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Server server = new Server(props);
+        out.println(READY);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("exit")) {
+            if (line.equals("stats")) {
+                System.gc();
+                out.println(memory.getHeapMemoryUsage().getUsed() + " " + threads.getThreadCount()
+                        + " " + server.getRetainedBytes() + " " + server.getMaxQueueNanos());
+            }
+        }
+        Runtime.getRuntime().halt(0); // skip the shutdown hook, which would store the server's properties
+    }
+
+    /**
+     * Main method to run the benchmark.
+     *
+     * @param args options of the benchmark, see {@link ConnectionBenchmark}
+     */
+    public static void main(String[] args) {
+        String[] engines = {"thread", "virtual", "nio"};
+        int[] clientCounts = {1_000, 10_000, 50_000};
+        int port = 30100; // below the usual ephemeral ports, which the clients take
+        int samples = 1_000;
+
+        try {
+            if (args.length == 3 && args[0].equals("--serve")) {
+                serve(args[1], Integer.parseInt(args[2]));
+                return;
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--engines" -> engines = value.split(",");
+                    case "--clients" -> clientCounts = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    case "--port" -> port = Integer.parseInt(value);
+                    case "--samples" -> samples = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            new ConnectionBenchmark(engines, clientCounts, port, samples).run(System.out);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: ConnectionBenchmark [--engines thread,virtual,nio] [--clients 1000,10000,50000] " +
+                    "[--port P] [--samples S]");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error running server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package communication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class is a thread serving many non-blocking connections with a single selector.
+ * Other threads pass work to it with {@link #execute(Runnable)}; everything touching
+ * the selector and its keys runs on this thread.
+ */
+class EventLoop extends Thread {
+    /**
+     * Size of the buffer shared by all connections of this loop for reading, in bytes.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Selector of all connections of this loop.
+     */
+    private final Selector selector;
+
+    /**
+     * Tasks passed by other threads, run on this thread.
+     */
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Buffer connections read into; bytes of incomplete frames are copied out of it,
+     * so idle connections hold no buffers of their own.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    /**
+     * Indicating whether this loop should keep running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for this.
+     *
+     * @param name name of the thread
+     * @throws UncheckedIOException when the selector can not be opened
+     */
+    EventLoop(String name) {
+        super(name);
+        setDaemon(true);
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs passed task on this loop: at once, if called from it, otherwise as soon as the loop wakes up.
+     *
+     * @param task task to run
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == this) {
+            task.run();
+        } else {
+            tasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Getter for this.selector.
+     *
+     * @return selector of all connections of this loop
+     */
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Getter for this.readBuffer.
+     *
+     * @return buffer shared by all connections of this loop for reading
+     */
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * Stops this loop.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("Error selecting in " + getName() + ", " + e);
+                return;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                NioService service = (NioService) key.attachment();
+                if (key.isValid() && key.isReadable()) service.onReadable();
+                if (key.isValid() && key.isWritable()) service.onWritable();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector of " + getName() + ", " + e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package communication;
+
+import java.util.function.Function;
+
+/**
+ * This enum represents formats of payloads of frames, see {@link Frames}.
+ */
+enum FrameFormat {
+    /**
+     * Protocols serialized into an object stream of their own.
+     */
+    SERIALIZED(Frames::encode),
+    /**
+     * Protocols encoded by {@link BinaryCodec}.
+     */
+    BINARY(BinaryCodec::encode);
+
+    /**
+     * Encodes a Protocol into a frame of this format.
+     */
+    private final Function<Protocol, byte[]> encoder;
+
+    /**
+     * Constructor for this.
+     *
+     * @param encoder encodes a Protocol into a frame of this format
+     */
+    FrameFormat(Function<Protocol, byte[]> encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Encodes passed Protocol into a frame of this format.
+     *
+     * @param message Protocol to encode
+     * @return the frame, length prefix included
+     * @throws IllegalArgumentException if the message can not be encoded
+     */
+    byte[] encode(Protocol message) {
+        return encoder.apply(message);
+    }
+}
@@ -0,0 +1,135 @@
+package communication;
+
+import java.io.*;
+
+/**
+ * This class encodes Protocols into frames of the framed wire format, used where a message must be read
+ * without blocking: every frame is the payload's length as a 4-byte big-endian int followed by the payload,
+ * a Protocol serialized on its own or, once the binary codec was negotiated, encoded by {@link BinaryCodec}.
+ * A framed connection starts with {@link #MAGIC} sent by the server, which tells it apart from an object stream,
+ * which starts with {@code 0xACED0005}.
+ */
+final class Frames {
+    /**
+     * First bytes sent by a server using the framed wire format.
+     */
+    static final int MAGIC = 0x415A4652; // "AZFR"
+
+    /**
+     * First bytes of an object stream.
+     */
+    static final int OBJECT_STREAM_MAGIC = 0xACED0005;
+
+    /**
+     * Largest accepted payload, in bytes.
+     */
+    static final int MAX_SIZE = 1 << 20;
+
+    /**
+     * Number of bytes of a frame's length prefix.
+     */
+    static final int HEADER_SIZE = 4;
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private Frames() {
+    }
+
+    /**
+     * Encodes passed Protocol into a frame.
+     *
+     * @param message Protocol to encode
+     * @return the frame, length prefix included
+     * @throws IllegalArgumentException if the message is not serializable or too big
+     */
+    static byte[] encode(Protocol message) {
+        ByteArrayOutputStream bytes = open();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(message);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Protocol can not be serialized: " + e.getMessage(), e);
+        }
+        return seal(bytes);
+    }
+
+    /**
+     * Opens a buffer to encode a frame into, holding room for the length prefix.
+     *
+     * @return buffer to write the payload to
+     */
+    static ByteArrayOutputStream open() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(new byte[HEADER_SIZE], 0, HEADER_SIZE); // length prefix, filled in by seal
+        return bytes;
+    }
+
+    /**
+     * Completes a frame opened with {@link #open()}.
+     *
+     * @param bytes buffer holding the payload
+     * @return the frame, length prefix included
+     * @throws IllegalArgumentException if the payload is too big
+     */
+    static byte[] seal(ByteArrayOutputStream bytes) {
+        byte[] frame = bytes.toByteArray();
+        int size = frame.length - HEADER_SIZE;
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Protocol of " + size + " bytes exceeds frame limit");
+        }
+        frame[0] = (byte) (size >>> 24);
+        frame[1] = (byte) (size >>> 16);
+        frame[2] = (byte) (size >>> 8);
+        frame[3] = (byte) size;
+        return frame;
+    }
+
+    /**
+     * Decodes a payload of a frame, either a serialized Protocol or one encoded by {@link BinaryCodec}.
+     * The first byte tells them apart: a serialized object starts with {@code 0xAC}, a binary payload
+     * with a header's ordinal.
+     *
+     * @param buffer array holding the payload
+     * @param offset offset of the payload
+     * @param size   payload's length
+     * @return decoded Protocol
+     * @throws IOException when the payload is not a valid Protocol
+     */
+    static Protocol decode(byte[] buffer, int offset, int size) throws IOException {
+        if (size > 0 && buffer[offset] != (byte) (OBJECT_STREAM_MAGIC >>> 24)) {
+            return BinaryCodec.decode(buffer, offset, size);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, size))) {
+            return (Protocol) input.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Frame does not hold a Protocol", e);
+        }
+    }
+
+    /**
+     * Checks a frame's length prefix.
+     *
+     * @param size payload's length read from the prefix
+     * @throws IOException if the length is negative or exceeds {@link #MAX_SIZE}
+     */
+    static void checkSize(int size) throws IOException {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IOException("Invalid frame length " + size);
+        }
+    }
+
+    /**
+     * Reads a frame from a blocking stream.
+     *
+     * @param input stream to read from
+     * @return decoded Protocol
+     * @throws IOException when I/O error occurs or the frame is malformed
+     */
+    static Protocol read(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        checkSize(size);
+        byte[] payload = new byte[size];
+        input.readFully(payload);
+        return decode(payload, 0, size);
+    }
+}
@@ -1,11 +1,20 @@
 package communication;
 
+import bot.GreedyPolicy;
 import game.Game;
+import game.Move;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class is used to handle game that is being played by Clients.
+ * Its state is guarded by this.lock, which is held while messages of a change are sent so that
+ * every player receives them in order. Sending only queues encoded messages, see {@link OutboundQueue},
+ * so a slow player does not hold up the game.
  */
 public class GameHandler {
     /**
@@ -28,6 +37,23 @@ public class GameHandler {
      * Game that is being played by the players.
      */
     private Game game;
+    /**
+     * Chooses moves for players who run out of time. It takes no search, so that timed out turns
+     * of many games do not wait for each other.
+     */
+    private final GreedyPolicy fallback = new GreedyPolicy(new SplittableRandom().nextLong());
+    /**
+     * Scheduled move of the current player, made if the turn is not over before, null if the turn is not timed.
+     */
+    private ScheduledFuture<?> turnClock;
+    /**
+     * Guards state of this game.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Sequence number of the last update of this game sent to the players, 0 for the start.
+     */
+    private int sequence;
 
     /**
      * Getter for hasStarted
@@ -81,103 +107,275 @@ public class GameHandler {
      *
      * @param player who wants to join this lobby
      */
-    synchronized public void addPlayer(Service player) {
-        Protocol reply;
-        if (players.contains(player)) {
-            reply = new Protocol(Header.FAIL);
-            reply.put("source", Header.JOINGAME);
-            reply.put("dialog", "You are already in this lobby!");
-        } else if (hasStarted) {
-            reply = new Protocol(Header.FAIL);
-            reply.put("source", Header.JOINGAME);
-            reply.put("dialog", "This game has already started!");
-        } else if (isFull()) {
-            reply = new Protocol(Header.FAIL);
-            reply.put("source", Header.JOINGAME);
-            reply.put("dialog", "This lobby is full!");
-        } else if (game != null && !game.getUsernames().contains(player.getUsername())) {
-            reply = new Protocol(Header.FAIL);
-            reply.put("source", Header.JOINGAME);
-            reply.put("dialog", "This game is being resumed!");
-        } else {
-            players.add(player);
-            player.setGame(this);
-            reply = new Protocol(Header.JOINEDGAME);
-            reply.put("creator", players.get(0).getUsername());
-            Protocol replyCreator = new Protocol(Header.PLAYERJOINED);
-            replyCreator.put("username", player.getUsername());
-            players.get(0).send(replyCreator);
-        }
+    public void addPlayer(Service player) {
+        lock.lock();
+        try {
+            Protocol reply;
+            if (players.contains(player)) {
+                reply = new Protocol(Header.FAIL);
+                reply.put("source", Header.JOINGAME);
+                reply.put("dialog", "You are already in this lobby!");
+            } else if (hasStarted) {
+                reply = new Protocol(Header.FAIL);
+                reply.put("source", Header.JOINGAME);
+                reply.put("dialog", "This game has already started!");
+            } else if (isFull()) {
+                reply = new Protocol(Header.FAIL);
+                reply.put("source", Header.JOINGAME);
+                reply.put("dialog", "This lobby is full!");
+            } else if (game != null && !game.getUsernames().contains(player.getUsername())) {
+                reply = new Protocol(Header.FAIL);
+                reply.put("source", Header.JOINGAME);
+                reply.put("dialog", "This game is being resumed!");
+            } else {
+                players.add(player);
+                player.setGame(this);
+                reply = new Protocol(Header.JOINEDGAME);
+                reply.put("creator", players.get(0).getUsername());
+                Protocol replyCreator = new Protocol(Header.PLAYERJOINED);
+                replyCreator.put("username", player.getUsername());
+                players.get(0).send(replyCreator);
+            }
 
-        player.send(reply);
+            player.send(reply);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Attempts to start this lobby.
      */
     public void start() {
-        if (game != null && game.playerCount() != players.size()) {
-            StringBuilder sb = new StringBuilder();
-            boolean found;
-            for (String username : game.getUsernames()) {
-                found = false;
-                for (Service player : players) {
-                    if (player.getUsername().equals(username)) {
-                        found = true;
-                        break;
+        lock.lock();
+        try {
+            if (game != null && game.playerCount() != players.size()) {
+                StringBuilder sb = new StringBuilder();
+                boolean found;
+                for (String username : game.getUsernames()) {
+                    found = false;
+                    for (Service player : players) {
+                        if (player.getUsername().equals(username)) {
+                            found = true;
+                            break;
+                        }
                     }
+                    if (!found) sb.append(username).append(",\n");
                 }
-                if (!found) sb.append(username).append(",\n");
+                sb.deleteCharAt(sb.length() - 2); // trimming last ",\n"
+                Protocol fail = new Protocol(Header.FAIL);
+                fail.put("source", Header.STARTGAME);
+                fail.put("dialog", String.format("[Resumed game] Missing player(s):\n%s", sb));
+                players.get(0).send(fail);
+                return;
             }
-            sb.deleteCharAt(sb.length() - 2); // trimming last ",\n"
-            Protocol fail = new Protocol(Header.FAIL);
-            fail.put("source", Header.STARTGAME);
-            fail.put("dialog", String.format("[Resumed game] Missing player(s):\n%s", sb));
-            players.get(0).send(fail);
-            return;
+
+            this.hasStarted = true;
+            ArrayList<String> usernames = new ArrayList<>();
+            for (Service s : players) {
+                usernames.add(s.getUsername());
+            }
+
+            if (game == null) {
+                game = new Game(players.size(), usernames);
+            }
+
+            Protocol reply = new Protocol(Header.STARTEDGAME);
+            reply.put("creator", players.get(0).getUsername());
+            reply.put("game", game);
+            reply.put("seq", sequence);
+            sendToSeats(reply);
+            startTurnClock();
+        } finally {
+            lock.unlock();
         }
+    }
 
-        this.hasStarted = true;
-        ArrayList<String> usernames = new ArrayList<>();
-        for (Service s : players) {
-            usernames.add(s.getUsername());
+    /**
+     * Validates and applies a move sent by passed player, then sends updated game to all players.
+     * A rejected move is answered with the current game, so that the sender drops its local changes.
+     *
+     * @param player who sent the move
+     * @param move   packed move, see game.Move
+     */
+    public void applyMove(Service player, int move) {
+        lock.lock();
+        try {
+            if (!hasStarted) return;
+            int seat = players.indexOf(player);
+            if (seat != game.getCurrentPlayerTurn() || game.isEndOfGame() || !game.isLegal(move)) {
+                System.err.printf("Rejected move %d of %s in game %s%n", move, player.getUsername(), gameCode);
+                sendSnapshot(player);
+                return;
+            }
+            sendMove(move);
+            startTurnClock();
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (game == null) {
-            game = new Game(players.size(), usernames);
+    /**
+     * Starts the clock of the current turn, if the server limits time of moves. When the time is up,
+     * a move is chosen for the current player by this.fallback.
+     */
+    private void startTurnClock() {
+        lock.lock();
+        try {
+            stopTurnClock();
+            long turnMillis = server.getTurnMillis();
+            if (turnMillis <= 0 || game.isEndOfGame()) return;
+
+            long hash = game.getHash();
+            turnClock = server.getClock().schedule(() -> {
+                lock.lock();
+                try {
+                    if (game.getHash() != hash || game.isEndOfGame()) return; // the player moved meanwhile
+                    applyFallbackMove(hash, fallback.chooseMove(game));
+                } finally {
+                    lock.unlock();
+                }
+            }, turnMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        Protocol reply = new Protocol(Header.STARTEDGAME);
-        reply.put("creator", players.get(0).getUsername());
-        reply.put("game", game);
-        for (int i = 0; i < players.size(); i++) {
-            reply.put("id", i);
-            players.get(i).send(reply);
+    /**
+     * Stops the clock of the current turn.
+     */
+    private void stopTurnClock() {
+        lock.lock();
+        try {
+            if (turnClock != null) {
+                turnClock.cancel(false);
+                turnClock = null;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * This method updates this.game.
+     * Applies a move chosen for the current player whose time is up.
      *
-     * @param updated updated game
+     * @param hash hash of the game the move was chosen in
+     * @param move packed move, see game.Move
      */
-    public void updateGame(Game updated) {
-        this.game = updated;
-        sendUpdated();
+    private void applyFallbackMove(long hash, int move) {
+        lock.lock();
+        try {
+            if (turnClock == null || game.getHash() != hash || game.isEndOfGame()) return;
+            System.out.printf("Time is up for %s in game %s, playing %s%n",
+                    game.getUsernames().get(game.getCurrentPlayerTurn()), gameCode, new Move(move));
+            sendMove(move);
+            startTurnClock();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Sends updated game to all players.
+     * Applies passed legal move and sends it to all players. Players on the binary codec, who apply updates
+     * themselves, share a message with the move alone, the tiles refilling the workshops if the move ended a round
+     * and a checksum of the resulting game; other players receive the whole game.
+     *
+     * @param move packed legal move, see game.Move
      */
-    public void sendUpdated() {
-        Protocol update = new Protocol(Header.GAMEUPDATED);
-        update.data.put("game", this.game);
+    private void sendMove(int move) {
+        boolean endsRound = game.endsRound(move);
+        game.apply(move);
+
+        Protocol delta = new Protocol(Header.GAMEUPDATED);
+        delta.put("seq", ++sequence);
+        delta.put("move", move);
+        if (endsRound && !game.isEndOfGame()) delta.put("tiles", game.getWorkshopStates());
+        delta.put("check", checksum(game));
+        Broadcast sharedDelta = new Broadcast(delta);
+        Protocol update = null;
         for (int i = 0; i < players.size(); i++) {
-            update.put("id", i);
-            players.get(i).send(update);
+            Service player = players.get(i);
+            if (player.usesBinaryCodec()) {
+                player.send(sharedDelta);
+                continue;
+            }
+            if (update == null) {
+                update = new Protocol(Header.GAMEUPDATED);
+                update.put("game", game);
+                update.put("seq", sequence);
+            }
+            player.send(seated(update, i));
         }
     }
 
+    /**
+     * Sends passed message to all players. Players on the binary codec share a single encoding of the message
+     * and learn their seat from a {@link Header#SEAT} sent before it; others receive a copy holding their seat
+     * as its id.
+     *
+     * @param message message to send, without a seat
+     */
+    private void sendToSeats(Protocol message) {
+        Broadcast shared = new Broadcast(message);
+        for (int i = 0; i < players.size(); i++) {
+            Service player = players.get(i);
+            if (player.usesBinaryCodec()) {
+                Protocol seat = new Protocol(Header.SEAT);
+                seat.put("id", i);
+                player.send(seat);
+                player.send(shared);
+            } else {
+                player.send(seated(message, i));
+            }
+        }
+    }
+
+    /**
+     * Copies passed message for a player, adding the player's seat as its id.
+     *
+     * @param message message to copy
+     * @param seat    player's seat
+     * @return the copy
+     */
+    private static Protocol seated(Protocol message, int seat) {
+        Protocol copy = new Protocol(message.header);
+        copy.data.putAll(message.data);
+        copy.put("id", seat);
+        return copy;
+    }
+
+    /**
+     * Sends the whole game to passed player, who dropped or lost track of its state.
+     *
+     * @param player player to send the game to
+     */
+    public void sendSnapshot(Service player) {
+        lock.lock();
+        try {
+            int seat = players.indexOf(player);
+            if (!hasStarted || seat < 0) return;
+            Protocol update = new Protocol(Header.GAMEUPDATED);
+            update.put("game", game);
+            update.put("id", seat);
+            update.put("creator", players.get(0).getUsername());
+            update.put("seq", sequence);
+            player.send(update);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Computes the checksum of a game sent with a move, letting a player that applied the move compare its state
+     * with the server's. A few bits suffice, as a player out of sync stays so and the next update tells it.
+     *
+     * @param game game to check
+     * @return lowest 24 bits of the game's hash
+     */
+    static int checksum(Game game) {
+        return (int) game.getHash() & 0xFFFFFF;
+    }
+
     /**
      * Returns whether this lobby reached in max capacity (4 players)
      *
@@ -192,25 +390,32 @@ public class GameHandler {
      *
      * @param service Client that left the game
      */
-    synchronized public void left(Service service) {
-        Protocol forCreator = new Protocol(Header.LEAVEGAME);
-        forCreator.put("game", game);
-        forCreator.put("username", service.getUsername());
-        Service creator = players.get(0);
-        creator.send(forCreator);
-        creator.setGame(null);
-
-        Protocol forUsers = new Protocol(Header.LEAVEGAME);
-        forUsers.put("username", service.getUsername());
-        for (int i = 1; i < players.size(); i++) {
-            Service player = players.get(i);
-            player.setGame(null);
-            if (player.getUsername().equals(service.getUsername())) continue; // skip the one that left
-            player.send(forUsers); // send to others
-        }
+    public void left(Service service) {
+        lock.lock();
+        try {
+            stopTurnClock();
+            Protocol forCreator = new Protocol(Header.LEAVEGAME);
+            forCreator.put("game", game);
+            forCreator.put("username", service.getUsername());
+            Service creator = players.get(0);
+            creator.send(forCreator);
+            creator.setGame(null);
 
-        // removing this game from Server
-        server.removeGame(gameCode);
+            Protocol forUsers = new Protocol(Header.LEAVEGAME);
+            forUsers.put("username", service.getUsername());
+            Broadcast sharedForUsers = new Broadcast(forUsers);
+            for (int i = 1; i < players.size(); i++) {
+                Service player = players.get(i);
+                player.setGame(null);
+                if (player.getUsername().equals(service.getUsername())) continue; // skip the one that left
+                player.send(sharedForUsers); // send to others
+            }
+
+            // removing this game from Server
+            server.removeGame(gameCode);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -222,9 +427,10 @@ public class GameHandler {
         Protocol reply = new Protocol(Header.LEAVELOBBY);
         reply.put("username", creator);
         reply.put("creator", true);
+        Broadcast shared = new Broadcast(reply);
         for (Service s : players) {
             s.setGame(null);
-            s.send(reply);
+            s.send(shared);
         }
         server.removeGame(gameCode);
     }
@@ -235,16 +441,20 @@ public class GameHandler {
      * @param service that left the lobby, to remove
      */
     public void leftLobby(Service service) {
-        if (players.get(0).getUsername().equals(service.getUsername())) { // creator left
-            killLobby(service.getUsername());
-        } else {
-            players.remove(service);
-            service.setGame(null);
+        lock.lock();
+        try {
+            if (players.get(0).getUsername().equals(service.getUsername())) { // creator left
+                killLobby(service.getUsername());
+            } else {
+                players.remove(service);
+                service.setGame(null);
 
-            Protocol forCreator = new Protocol(Header.LEAVELOBBY);
-            forCreator.put("username", service.getUsername());
-            players.get(0).send(forCreator);
+                Protocol forCreator = new Protocol(Header.LEAVELOBBY);
+                forCreator.put("username", service.getUsername());
+                players.get(0).send(forCreator);
+            }
+        } finally {
+            lock.unlock();
         }
-
     }
 }
@@ -24,8 +24,10 @@ public enum Header implements Serializable {
     REGISTERED,
     STARTGAME,
     STARTEDGAME,
-    UPDATEGAME,
+    MOVE,
     FAIL,
     STOP,
-    NULLCOMMAND
+    NULLCOMMAND,
+    SYNCGAME,
+    SEAT
 }
\ No newline at end of file
@@ -0,0 +1,387 @@
+package communication;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class sends Protocols through the output stream of a connection, serialized into an object stream
+ * or encoded in frames. Every message is encoded by the thread sending it, as its objects may change right after,
+ * and then written to the connection whole, in one of two ways:
+ * <ul>
+ *     <li>by the sending thread itself, through a buffer flushed once no other thread waits to send, so that
+ *     messages several threads send to a connection at once leave together;</li>
+ *     <li>by a writer task, which drains an {@link OutboundQueue} and flushes once it is empty, so that the sending
+ *     thread returns at once however slowly the peer reads. A message finding the queue full is not sent.</li>
+ * </ul>
+ * The object stream is reset as its {@link ResetPolicy} says, so that it does not keep every message
+ * it ever sent. A {@link Broadcast} is written as its serialized frame holds it, between two resets, as a new
+ * stream writes objects just like a stream that was reset. The number of bytes written since the last reset,
+ * which is roughly what the stream and the peer's input keep, is reported by {@link #retainedBytes()}.
+ */
+final class MessageOutput implements Closeable {
+    /**
+     * Size of the buffer, large enough for all usual messages.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Offset of the serialized object in a frame of {@link FrameFormat#SERIALIZED}, after the length prefix
+     * and the stream's header.
+     */
+    private static final int OBJECT_OFFSET = Frames.HEADER_SIZE + 4;
+
+    /**
+     * Output stream of the connection.
+     */
+    private final OutputStream out;
+
+    /**
+     * Buffer of the connection's output stream.
+     */
+    private final BufferedOutputStream buffer;
+
+    /**
+     * Holds what this.objects wrote for the message being encoded.
+     */
+    private final ByteArrayOutputStream staging = new ByteArrayOutputStream(256);
+
+    /**
+     * Counts bytes written by this.objects.
+     */
+    private final CountingOutputStream counter = new CountingOutputStream(staging);
+
+    /**
+     * Object stream writing messages, null once messages are sent in frames.
+     */
+    private volatile ObjectOutputStream objects;
+
+    /**
+     * Format of frames of messages, null while they are serialized into this.objects.
+     */
+    private FrameFormat format;
+
+    /**
+     * Tells when this.objects is reset.
+     */
+    private final ResetPolicy policy;
+
+    /**
+     * Number of messages written since the last reset.
+     */
+    private long messagesSinceReset;
+
+    /**
+     * Number of bytes written by this.objects before the last reset.
+     */
+    private volatile long resetBytes;
+
+    /**
+     * Indicating whether this.objects is reset before the next message.
+     */
+    private boolean resetPending;
+
+    /**
+     * Queue of encoded messages drained by the writer task, null if sending threads write them.
+     */
+    private final OutboundQueue queue;
+
+    /**
+     * Runs the writer task, null if sending threads write messages.
+     */
+    private final Executor writer;
+
+    /**
+     * Indicating whether the writer task is scheduled or running.
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Guards encoding, which other clients' threads do as well, and writing by sending threads. A lock rather
+     * than a monitor, so that a virtual thread blocked in a write does not pin its carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Constructor for this, serializing messages into an object stream written by sending threads.
+     * The stream's header is sent at once, as the peer's object stream waits for it.
+     *
+     * @param out    output stream of the connection
+     * @param policy tells when the object stream is reset
+     * @throws IOException when I/O error occurs
+     */
+    MessageOutput(OutputStream out, ResetPolicy policy) throws IOException {
+        this(out, policy, null, null);
+    }
+
+    /**
+     * Constructor for this, serializing messages into an object stream written by a writer task.
+     * The stream's header is sent at once, as the peer's object stream waits for it.
+     *
+     * @param out    output stream of the connection
+     * @param policy tells when the object stream is reset
+     * @param queue  queue of encoded messages, null if sending threads write them
+     * @param writer runs the writer task, null if sending threads write messages
+     * @throws IOException when I/O error occurs
+     */
+    MessageOutput(OutputStream out, ResetPolicy policy, OutboundQueue queue, Executor writer) throws IOException {
+        this.out = out;
+        this.buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.policy = policy;
+        this.queue = queue;
+        this.writer = writer;
+        this.objects = new ObjectOutputStream(counter);
+        objects.flush();
+        resetBytes = counter.count;
+        lock.lock();
+        try {
+            deliver(staged());
+            flushUnlessQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Constructor for this, encoding messages into frames written by sending threads.
+     *
+     * @param out    output stream of the connection
+     * @param format format of frames of messages
+     */
+    MessageOutput(OutputStream out, FrameFormat format) {
+        this.out = out;
+        this.buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.policy = ResetPolicy.NEVER;
+        this.format = format;
+        this.queue = null;
+        this.writer = null;
+    }
+
+    /**
+     * Counts bytes written to an output stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        /**
+         * Number of bytes written so far.
+         */
+        private volatile long count;
+
+        /**
+         * Constructor for this.
+         *
+         * @param out stream to write to
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Sends passed message.
+     *
+     * @param message message to send
+     * @throws IOException              when I/O error occurs or the queue is full
+     * @throws IllegalArgumentException if the message can not be encoded into a frame
+     */
+    void send(Protocol message) throws IOException {
+        lock.lock();
+        try {
+            write(message);
+            flushUnlessQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends passed message, written as its frame of this connection's format holds it, so that its bytes
+     * are shared with other connections.
+     *
+     * @param message message to send
+     * @throws IOException              when I/O error occurs or the queue is full
+     * @throws IllegalArgumentException if the message can not be encoded
+     */
+    void send(Broadcast message) throws IOException {
+        lock.lock();
+        try {
+            if (objects == null) {
+                deliver(ByteBuffer.wrap(message.frame(format)));
+            } else {
+                byte[] frame = message.frame(FrameFormat.SERIALIZED);
+                int length = frame.length - OBJECT_OFFSET;
+                if (messagesSinceReset > 0) {
+                    reset();
+                    deliver(staged());
+                }
+                deliver(ByteBuffer.wrap(frame, OBJECT_OFFSET, length));
+                // written past the stream, but kept by the peer's input all the same
+                counter.count += length;
+                // the stream does not know the object, so it is reset before the next message refers to it
+                messagesSinceReset++;
+                resetPending = true;
+            }
+            flushUnlessQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends passed message, if any, and then sends all following messages in frames of passed format.
+     * No message of another thread is sent in between.
+     *
+     * @param message message to send before, null if none
+     * @param format  format of frames of following messages
+     * @throws IOException when I/O error occurs or the queue is full
+     */
+    void useFrames(Protocol message, FrameFormat format) throws IOException {
+        lock.lock();
+        try {
+            if (message != null) write(message);
+            if (queue == null) buffer.flush();
+            this.objects = null; // not closed, which would close the connection
+            this.format = format;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes passed message and passes it on to be written. The object stream is reset before the message,
+     * if its policy said so after the previous one: the peer's stream reads a reset only when it reads the next
+     * object, so one sent after the message would be left unread if the connection switches to frames.
+     * The caller holds this.lock.
+     *
+     * @param message message to write
+     * @throws IOException when I/O error occurs or the queue is full
+     */
+    private void write(Protocol message) throws IOException {
+        if (objects == null) {
+            deliver(ByteBuffer.wrap(format.encode(message)));
+            return;
+        }
+        if (resetPending) reset();
+        objects.writeObject(message);
+        objects.flush();
+        messagesSinceReset++;
+        resetPending = policy.shouldReset(messagesSinceReset, counter.count - resetBytes);
+        deliver(staged());
+    }
+
+    /**
+     * Takes what the object stream wrote since it was last taken. The caller holds this.lock.
+     *
+     * @return bytes written by the object stream
+     */
+    private ByteBuffer staged() {
+        ByteBuffer bytes = ByteBuffer.wrap(staging.toByteArray());
+        staging.reset();
+        return bytes;
+    }
+
+    /**
+     * Writes encoded bytes to the buffer, or queues them for the writer task. The caller holds this.lock,
+     * so that bytes are queued in the order they were encoded in.
+     *
+     * @param bytes bytes to write, not changed
+     * @throws IOException when I/O error occurs or the queue is full
+     */
+    private void deliver(ByteBuffer bytes) throws IOException {
+        if (queue == null) {
+            buffer.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+        if (!queue.offer(bytes)) {
+            throw new IOException("Outbound queue is full, " + queue.depth() + " messages wait");
+        }
+        if (writing.compareAndSet(false, true)) {
+            writer.execute(this::drain);
+        }
+    }
+
+    /**
+     * Flushes all written messages, unless the writer task writes them or another thread waits to send,
+     * which flushes them then. The caller holds this.lock.
+     *
+     * @throws IOException when I/O error occurs
+     */
+    private void flushUnlessQueued() throws IOException {
+        if (queue == null && !lock.hasQueuedThreads()) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Writer task: writes queued messages until the queue is empty and flushes them then. Once writing fails,
+     * the connection is closed, so that its reading thread ends serving the client.
+     */
+    private void drain() {
+        try {
+            do {
+                ByteBuffer bytes;
+                while ((bytes = queue.peek()) != null) {
+                    buffer.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                    queue.remove();
+                }
+                buffer.flush();
+                writing.set(false);
+                // a message queued after the queue was found empty finds the task still running and does not start it
+            } while (!queue.isEmpty() && writing.compareAndSet(false, true));
+        } catch (IOException e) {
+            System.err.println("Error writing to client, " + e);
+            queue.clear();
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // the connection is closed either way
+            }
+        }
+    }
+
+    /**
+     * Resets the object stream. The caller holds this.lock.
+     *
+     * @throws IOException when I/O error occurs
+     */
+    private void reset() throws IOException {
+        objects.reset();
+        messagesSinceReset = 0;
+        resetBytes = counter.count;
+        resetPending = false;
+    }
+
+    /**
+     * Gets the number of bytes written by the object stream since its last reset. Objects written meanwhile
+     * are kept by the stream and by the peer's input until the next reset, made before the next message.
+     *
+     * @return number of retained bytes, 0 if messages are sent in frames
+     */
+    long retainedBytes() {
+        return objects == null ? 0 : counter.count - resetBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (queue == null) {
+            buffer.close();
+            return;
+        }
+        // not flushed, as the writer task may be blocked writing to a peer that stopped reading
+        queue.clear();
+        out.close();
+    }
+}
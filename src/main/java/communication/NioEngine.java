@@ -0,0 +1,99 @@
+package communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class serves Server's clients with non-blocking sockets: a single acceptor hands every accepted
+ * connection to one of a few {@link EventLoop}s, which read and write framed messages (see {@link Frames})
+ * of all their connections. An idle connection costs a selection key and a few small objects instead of a thread,
+ * so a host can keep tens of thousands of clients connected.
+ * <p>
+ * Clients of this engine must speak the framed wire format; the client of this project detects it on connect.
+ */
+class NioEngine implements Runnable {
+    /**
+     * Maximal number of connections waiting to be accepted.
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * Server whose clients are served.
+     */
+    private final Server server;
+
+    /**
+     * Channel accepting connections.
+     */
+    private final ServerSocketChannel acceptor;
+
+    /**
+     * Loops serving accepted connections.
+     */
+    private final EventLoop[] loops;
+
+    /**
+     * Index of the loop that gets the next connection.
+     */
+    private int next;
+
+    /**
+     * Constructor for this, binds the port and starts the event loops.
+     *
+     * @param server server whose clients are served
+     * @param port   port to listen on
+     * @param loops  number of event loops
+     * @throws IOException when the port can not be bound
+     */
+    NioEngine(Server server, int port, int loops) throws IOException {
+        if (loops < 1) {
+            throw new IllegalArgumentException("At least one event loop is needed");
+        }
+        this.server = server;
+        this.acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port), BACKLOG);
+        this.loops = new EventLoop[loops];
+        for (int i = 0; i < loops; i++) {
+            this.loops[i] = new EventLoop("event-loop-" + i);
+            this.loops[i].start();
+        }
+    }
+
+    /**
+     * Accepts connections until the acceptor is closed, spreading them over the event loops.
+     */
+    @Override
+    public void run() {
+        while (acceptor.isOpen()) {
+            try {
+                SocketChannel channel = acceptor.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                NioService service = new NioService(channel, server, server.nextID(), loop);
+                server.addClientService(service);
+                loop.execute(service::register);
+            } catch (IOException e) {
+                if (!acceptor.isOpen()) return;
+                System.err.println("Error accepting connection. Client will not be served...");
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    void close() {
+        try {
+            acceptor.close();
+        } catch (IOException e) {
+            System.err.println("Error closing acceptor, " + e);
+        }
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
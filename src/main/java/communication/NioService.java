@@ -0,0 +1,236 @@
+package communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is a Service whose client is served by an {@link EventLoop} through a non-blocking channel.
+ * Received frames are handled on the loop's thread. Sent messages are encoded on the sending thread
+ * and queued in the Service's {@link OutboundQueue}, which the loop drains, so {@link #send(Protocol)} never blocks.
+ */
+class NioService extends Service {
+    /**
+     * Size of a buffer holding the start of a frame whose length is not known yet, in bytes.
+     */
+    private static final int SMALL_BUFFER_SIZE = 256;
+
+    /**
+     * Channel connecting the client.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Loop serving this client.
+     */
+    private final EventLoop loop;
+
+    /**
+     * Key of this.channel in the loop's selector, null until registered.
+     */
+    private SelectionKey key;
+
+    /**
+     * Bytes of an incomplete frame received so far, in write mode; null if none.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * Frames waiting to be written, the oldest first.
+     */
+    private final OutboundQueue outbound = getOutbound();
+
+    /**
+     * Indicating whether writing of this.outbound is scheduled on the loop or waits for the channel.
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Indicating whether messages are encoded by {@link BinaryCodec}, as negotiated by the client.
+     */
+    private volatile boolean binary;
+
+    /**
+     * Indicating whether this Service was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for this.
+     *
+     * @param channel non-blocking channel connecting the client
+     * @param server  server running this Service
+     * @param id      client's id
+     * @param loop    loop serving the client
+     */
+    NioService(SocketChannel channel, Server server, int id, EventLoop loop) {
+        super(server, id);
+        this.channel = channel;
+        this.loop = loop;
+        ByteBuffer magic = ByteBuffer.allocate(Frames.HEADER_SIZE).putInt(0, Frames.MAGIC);
+        outbound.offer(magic);
+        writing.set(true); // written once registered
+    }
+
+    /**
+     * Registers the channel with the loop's selector and writes the greeting. Runs on the loop.
+     */
+    void register() {
+        try {
+            key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        } catch (ClosedChannelException e) {
+            return;
+        }
+        onWritable();
+    }
+
+    /**
+     * Reads available bytes and handles every complete frame. Runs on the loop.
+     */
+    void onReadable() {
+        ByteBuffer buffer = pending != null ? pending : loop.readBuffer().clear();
+        try {
+            if (channel.read(buffer) < 0) {
+                disconnect("connection closed");
+                return;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= Frames.HEADER_SIZE) {
+                int size = buffer.getInt(buffer.position());
+                Frames.checkSize(size);
+                if (buffer.remaining() < Frames.HEADER_SIZE + size) break;
+                int offset = buffer.arrayOffset() + buffer.position() + Frames.HEADER_SIZE;
+                buffer.position(buffer.position() + Frames.HEADER_SIZE + size);
+                if (!handle(Frames.decode(buffer.array(), offset, size))) {
+                    close();
+                    return;
+                }
+                if (closed) return;
+            }
+        } catch (IOException e) {
+            disconnect(e.toString());
+            return;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            disconnect(e.toString());
+            return;
+        }
+        keep(buffer);
+    }
+
+    /**
+     * Keeps bytes of an incomplete frame left in passed buffer until more bytes arrive.
+     *
+     * @param buffer buffer in read mode
+     */
+    private void keep(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            pending = null;
+            return;
+        }
+        int needed = buffer.remaining() >= Frames.HEADER_SIZE
+                ? Frames.HEADER_SIZE + buffer.getInt(buffer.position())
+                : SMALL_BUFFER_SIZE;
+        if (buffer == pending && pending.capacity() >= needed) {
+            pending.compact();
+        } else {
+            pending = ByteBuffer.allocate(Math.max(needed, SMALL_BUFFER_SIZE)).put(buffer);
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the channel is full; in the latter case
+     * waits for the channel to become writable. Runs on the loop.
+     */
+    void onWritable() {
+        try {
+            while (true) {
+                ByteBuffer frame;
+                while ((frame = outbound.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.remove();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                writing.set(false);
+                // a frame queued after the queue was found empty would wait for the next send
+                if (outbound.isEmpty() || !writing.compareAndSet(false, true)) return;
+            }
+        } catch (IOException | CancelledKeyException e) {
+            disconnect(e.toString());
+        }
+    }
+
+    @Override
+    protected void send(Protocol command) {
+        if (closed) return;
+        System.out.printf("[%d] Sending %s%n", getId(), command);
+        enqueue((binary ? FrameFormat.BINARY : FrameFormat.SERIALIZED).encode(command));
+    }
+
+    @Override
+    protected void send(Broadcast message) {
+        if (closed) return;
+        System.out.printf("[%d] Sending %s%n", getId(), message);
+        enqueue(message.frame(binary ? FrameFormat.BINARY : FrameFormat.SERIALIZED));
+    }
+
+    /**
+     * Queues passed frame to be written by the loop, or disconnects the client if its queue is full.
+     * The frame is not changed, so it may be shared with other clients.
+     *
+     * @param frame frame to write
+     */
+    private void enqueue(byte[] frame) {
+        if (!outbound.offer(ByteBuffer.wrap(frame))) {
+            sendFailed(new IOException("Outbound queue is full, " + outbound.depth() + " messages wait"));
+            return;
+        }
+        if (writing.compareAndSet(false, true)) {
+            loop.execute(this::onWritable);
+        }
+    }
+
+    @Override
+    protected void useBinaryCodec(Protocol connected) {
+        // frames tell both formats apart, so the client still reads a message another thread encodes meanwhile
+        send(connected);
+        binary = true;
+    }
+
+    @Override
+    public void init() {
+        // the channel is ready once registered
+    }
+
+    /**
+     * Removes this Service from the server after the connection failed or was closed by the client.
+     *
+     * @param reason reason of the disconnection
+     */
+    private void disconnect(String reason) {
+        if (closed) return;
+        System.err.println("Error reading client (" + getId() + "), " + reason);
+        getServer().removeClientService(this);
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        outbound.clear();
+        pending = null;
+        try {
+            channel.close(); // cancels the key
+        } catch (IOException e) {
+            System.err.println("Error closing client (" + getId() + "), " + e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package communication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a bounded queue of encoded messages waiting to be written to a client, filled by the threads
+ * sending them and drained by a single writer. It measures how many messages wait and how long they wait,
+ * from being queued until they are written.
+ */
+final class OutboundQueue {
+    /**
+     * Queued messages, the oldest first.
+     */
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Largest number of queued messages.
+     */
+    private final int capacity;
+
+    /**
+     * Number of queued messages.
+     */
+    private final AtomicInteger depth = new AtomicInteger();
+
+    /**
+     * Largest number of messages queued at once so far.
+     */
+    private volatile int maxDepth;
+
+    /**
+     * Number of messages written so far.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Time written messages spent in this queue in total, in nanoseconds.
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Longest time a written message spent in this queue, in nanoseconds.
+     */
+    private volatile long maxWaitNanos;
+
+    /**
+     * Queued message.
+     */
+    private static final class Entry {
+        /**
+         * Bytes of the message, positioned at the first one not written yet.
+         */
+        final ByteBuffer bytes;
+
+        /**
+         * Time the message was queued at, from System.nanoTime().
+         */
+        final long queuedAt;
+
+        /**
+         * Constructor for this.
+         *
+         * @param bytes    bytes of the message
+         * @param queuedAt time the message was queued at
+         */
+        Entry(ByteBuffer bytes, long queuedAt) {
+            this.bytes = bytes;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Constructor for this.
+     *
+     * @param capacity largest number of queued messages
+     */
+    OutboundQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of outbound queue must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues bytes of a message, unless the queue is full.
+     *
+     * @param bytes bytes of the message; not changed, so they may be shared with other queues
+     * @return true, if the message was queued, false if the queue is full
+     */
+    boolean offer(ByteBuffer bytes) {
+        int queued = depth.incrementAndGet();
+        if (queued > capacity) {
+            depth.decrementAndGet();
+            return false;
+        }
+        if (queued > maxDepth) maxDepth = queued; // a lost race only understates the maximum
+        entries.add(new Entry(bytes, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * Gets bytes of the oldest message. Called by the writer only.
+     *
+     * @return bytes of the oldest message, null if the queue is empty
+     */
+    ByteBuffer peek() {
+        Entry entry = entries.peek();
+        return entry == null ? null : entry.bytes;
+    }
+
+    /**
+     * Removes the oldest message once it was written. Called by the writer only.
+     */
+    void remove() {
+        Entry entry = entries.poll();
+        if (entry == null) return;
+        depth.decrementAndGet();
+        long waited = System.nanoTime() - entry.queuedAt;
+        written.incrementAndGet();
+        waitNanos.addAndGet(waited);
+        if (waited > maxWaitNanos) maxWaitNanos = waited;
+    }
+
+    /**
+     * Checks whether this queue is empty.
+     *
+     * @return true, if no message is queued, false otherwise
+     */
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Removes all queued messages, which are not written then.
+     */
+    void clear() {
+        while (entries.poll() != null) {
+            depth.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of queued messages.
+     *
+     * @return number of queued messages
+     */
+    int depth() {
+        return depth.get();
+    }
+
+    /**
+     * Getter for this.maxDepth.
+     *
+     * @return largest number of messages queued at once so far
+     */
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the average time written messages spent in this queue.
+     *
+     * @return average time in nanoseconds, 0 if no message was written
+     */
+    long averageWaitNanos() {
+        long count = written.get();
+        return count == 0 ? 0 : waitNanos.get() / count;
+    }
+
+    /**
+     * Getter for this.maxWaitNanos.
+     *
+     * @return longest time a written message spent in this queue, in nanoseconds
+     */
+    long maxWaitNanos() {
+        return maxWaitNanos;
+    }
+}
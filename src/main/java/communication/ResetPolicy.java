@@ -0,0 +1,94 @@
+package communication;
+
+/**
+ * This class tells when a {@link MessageOutput} resets its object stream. Until it is reset, an object stream
+ * keeps every object it wrote, and everything they reference, so that it sends them again as back-references:
+ * memory of the connection grows with every message and an object changed since it was sent arrives unchanged.
+ * Resetting after every message prevents both at the cost of sending class descriptors with every message;
+ * other policies trade that for memory and should only be used where no changed object is sent again.
+ * <p>
+ * Written as {@code message} (default), {@code never}, {@code messages:N} (after every N messages)
+ * or {@code bytes:N} (once N bytes were written since the last reset).
+ */
+final class ResetPolicy {
+    /**
+     * Resets the stream after every message.
+     */
+    static final ResetPolicy EVERY_MESSAGE = new ResetPolicy(1, Long.MAX_VALUE);
+
+    /**
+     * Never resets the stream.
+     */
+    static final ResetPolicy NEVER = new ResetPolicy(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * Number of messages after which the stream is reset.
+     */
+    private final long messages;
+
+    /**
+     * Number of bytes written since the last reset after which the stream is reset.
+     */
+    private final long bytes;
+
+    /**
+     * Constructor for this.
+     *
+     * @param messages number of messages after which the stream is reset
+     * @param bytes    number of bytes written since the last reset after which the stream is reset
+     */
+    private ResetPolicy(long messages, long bytes) {
+        this.messages = messages;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Parses a policy written as described in {@link ResetPolicy}.
+     *
+     * @param policy written policy
+     * @return parsed policy
+     * @throws IllegalArgumentException if the policy is not valid
+     */
+    static ResetPolicy parse(String policy) {
+        String[] parts = policy.split(":", 2);
+        if (parts.length == 1) {
+            return switch (policy) {
+                case "message" -> EVERY_MESSAGE;
+                case "never" -> NEVER;
+                default -> throw new IllegalArgumentException("Unknown reset policy: " + policy);
+            };
+        }
+        long limit;
+        try {
+            limit = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit of reset policy: " + policy, e);
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit of reset policy must be positive: " + policy);
+        }
+        return switch (parts[0]) {
+            case "messages" -> new ResetPolicy(limit, Long.MAX_VALUE);
+            case "bytes" -> new ResetPolicy(Long.MAX_VALUE, limit);
+            default -> throw new IllegalArgumentException("Unknown reset policy: " + policy);
+        };
+    }
+
+    /**
+     * Checks whether a stream is to be reset.
+     *
+     * @param messages number of messages written since the last reset
+     * @param bytes    number of bytes written since the last reset
+     * @return true, if the stream is to be reset, false otherwise
+     */
+    boolean shouldReset(long messages, long bytes) {
+        return messages >= this.messages || bytes >= this.bytes;
+    }
+
+    @Override
+    public String toString() {
+        if (this == EVERY_MESSAGE) return "message";
+        if (this == NEVER) return "never";
+        return messages != Long.MAX_VALUE ? "messages:" + messages : "bytes:" + bytes;
+    }
+}
@@ -1,39 +1,76 @@
 package communication;
 
+import game.legacy.LegacyInputStream;
+
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class is the main Server used to run Azul gameplay.
+ * <p>
+ * The {@code engine} property chooses how clients are served: {@code thread} (default) runs every client
+ * on its own platform thread with blocking object streams, {@code virtual} does the same on virtual threads
+ * (falling back to platform threads on runtimes without them), {@code nio} serves all clients with
+ * {@code eventLoops} (default: number of processors) non-blocking event loops and framed messages,
+ * see {@link NioEngine}. The {@code streamReset} property tells when object streams of clients are reset,
+ * see {@link ResetPolicy}. Messages to every client wait in an {@link OutboundQueue} of at most
+ * {@code outboundQueue} (default: 1024) messages until they are written, so that no sending thread waits
+ * for a slow client; a client whose queue is full is disconnected.
+ * <p>
+ * Shared state is kept in concurrent collections and no lock is held while writing to a socket,
+ * so a virtual thread blocked on a slow client never pins its carrier thread.
  */
 public class Server implements Runnable {
 
     /**
-     * Used to connect with the clients.
+     * Used to connect with the clients, null if they are served by this.nioEngine.
      */
     private ServerSocket serverSocket;
 
+    /**
+     * Engine serving clients with non-blocking sockets, null if every client has its own thread.
+     */
+    private NioEngine nioEngine;
+
     /**
      * All connected clients
      */
-    private final ArrayList<Service> clients = new ArrayList<>();
+    private final Set<Service> clients = ConcurrentHashMap.newKeySet();
 
     /**
      * All stored users.
      */
-    private final HashMap<String, UserData> users;
+    private final ConcurrentHashMap<String, UserData> users;
 
     /**
      * Games recognizable by their codes (key).
      */
-    private final HashMap<String, GameHandler> games = new HashMap<>();
+    private final ConcurrentHashMap<String, GameHandler> games = new ConcurrentHashMap<>();
+
+    /**
+     * Creates unstarted threads serving clients of the blocking engines.
+     */
+    private Function<Runnable, Thread> clientThreads = Thread::new;
+
+    /**
+     * Runs writer tasks of clients of the blocking engines, null if clients are served by event loops.
+     */
+    private Executor writers;
 
     /**
      * Properties of this server.
@@ -45,20 +82,73 @@ public class Server implements Runnable {
      */
     private Thread serverThread;
 
+    /**
+     * Time a player has for a move before the server moves for them, in milliseconds, 0 if unlimited.
+     */
+    private final long turnMillis;
+
+    /**
+     * Tells when object streams of clients are reset.
+     */
+    private final ResetPolicy resetPolicy;
+
+    /**
+     * Largest number of messages waiting to be written to a client.
+     */
+    private final int outboundCapacity;
+
+    /**
+     * Runs turn clocks of all games.
+     */
+    private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "turn-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Constructor for this.
      *
      * @param p server's properties
+     * @throws IllegalStateException if stored users can not be read
      */
     public Server(Properties p) {
         props = p;
 
         int port = Integer.parseInt(props.getProperty("port"));
+        turnMillis = Long.parseLong(props.getProperty("turnSeconds", "0")) * 1000;
+        resetPolicy = ResetPolicy.parse(props.getProperty("streamReset", "message"));
+        outboundCapacity = Integer.parseInt(props.getProperty("outboundQueue", "1024"));
+        if (outboundCapacity <= 0) {
+            throw new IllegalArgumentException("outboundQueue must be positive: " + outboundCapacity);
+        }
         users = readUsers();
 
+        String engine = props.getProperty("engine", "thread");
         try {
-            serverSocket = new ServerSocket(port);
-            System.out.printf("Server started at host %s on port %s\n", InetAddress.getLocalHost(), port);
+            if (engine.equals("nio")) {
+                int loops = Integer.parseInt(props.getProperty("eventLoops",
+                        String.valueOf(Runtime.getRuntime().availableProcessors())));
+                nioEngine = new NioEngine(this, port, loops);
+            } else {
+                Function<Runnable, Thread> virtual = engine.equals("virtual") ? virtualThreads() : null;
+                if (virtual != null) {
+                    clientThreads = virtual;
+                    writers = task -> virtual.apply(task).start();
+                } else {
+                    if (engine.equals("virtual")) {
+                        System.err.println("Virtual threads are not available, serving clients on platform threads.");
+                    }
+                    // platform threads are reused, as most writer tasks end within microseconds
+                    writers = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "client-writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                serverSocket = new ServerSocket(port);
+            }
+            System.out.printf("Server started at host %s on port %s (%s engine)\n", InetAddress.getLocalHost(), port, engine);
         } catch (IOException e) {
             System.err.println("Error starting Server.");
             return;
@@ -84,32 +174,74 @@ public class Server implements Runnable {
     }
 
     /**
-     * This method sends passed Protocol to all connected clients.
+     * Looks up virtual threads, which this runtime may not have, through reflection.
+     *
+     * @return factory of unstarted virtual threads, null if they are not available
+     */
+    private static Function<Runnable, Thread> virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            return task -> {
+                try {
+                    return (Thread) unstarted.invoke(builder, task);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Virtual thread can not be created", e);
+                }
+            };
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // older runtime, or virtual threads are a preview feature that is not enabled
+            return null;
+        }
+    }
+
+    /**
+     * This method sends passed Protocol to all connected clients, encoded once for all of them.
      *
      * @param msg to send
      */
-    synchronized void send(Protocol msg) {
+    void send(Protocol msg) {
+        Broadcast shared = new Broadcast(msg);
         for (Service s : clients) {
-            s.send(msg);
+            s.send(shared);
         }
     }
 
     /**
-     * This method reads users database from a property file
+     * This method reads users database from a property file. A database stored by the first version of
+     * the server, whose games are not compatible with the current classes, is converted.
      *
      * @return read database
+     * @throws IllegalStateException if the database can not be read, so that the server does not start
+     *                               and later store an empty one over it
      */
-    private HashMap<String, UserData> readUsers() {
-        HashMap<String, UserData> readUsers = new HashMap<>();
+    private ConcurrentHashMap<String, UserData> readUsers() {
+        ConcurrentHashMap<String, UserData> readUsers = new ConcurrentHashMap<>();
 
         if (!props.containsKey("users")) return readUsers;
 
         byte[] data = Base64.getDecoder().decode(props.getProperty("users"));
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new ByteArrayInputStream(data))) {
-            readUsers = (HashMap<String, UserData>) ois.readObject();
-        } catch (IOException | ClassNotFoundException | ClassCastException ioException) {
-            ioException.printStackTrace();
+        Object stored;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            stored = ois.readObject();
+        } catch (InvalidClassException e) {
+            System.err.println("Converting users stored by the first version: " + e.getMessage());
+            try (ObjectInputStream ois = new LegacyInputStream(new ByteArrayInputStream(data))) {
+                stored = ois.readObject();
+            } catch (IOException | ClassNotFoundException legacyException) {
+                legacyException.addSuppressed(e);
+                throw new IllegalStateException("Stored users can not be read", legacyException);
+            }
+        } catch (IOException | ClassNotFoundException ioException) {
+            throw new IllegalStateException("Stored users can not be read", ioException);
+        }
+        for (Map.Entry<String, UserData> user : ((Map<String, UserData>) stored).entrySet()) {
+            // a concurrent map takes no nulls, which a HashMap may have stored
+            if (user.getKey() == null || user.getValue() == null) {
+                System.err.println("Skipping stored user without a name or data.");
+                continue;
+            }
+            readUsers.put(user.getKey(), user.getValue());
         }
         return readUsers;
     }
@@ -120,7 +252,7 @@ public class Server implements Runnable {
     private void writeUsers() {
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
              ObjectOutputStream os = new ObjectOutputStream(bos)) {
-            os.writeObject(users);
+            os.writeObject(new HashMap<>(users)); // stored as a HashMap, as it always was
             props.setProperty("users", new String(Base64.getEncoder().encode(bos.toByteArray())));
         } catch (IOException ioException) {
             ioException.printStackTrace();
@@ -146,9 +278,7 @@ public class Server implements Runnable {
      * @return true, if user was successfully added, false if user with passed username is already registered
      */
     public boolean addUser(String username, String passwordHash) {
-        if (users.containsKey(username)) return false;
-        users.put(username, new UserData(username, passwordHash));
-        return true;
+        return users.putIfAbsent(username, new UserData(username, passwordHash)) == null;
     }
 
     /**
@@ -159,15 +289,20 @@ public class Server implements Runnable {
      * @return true if passed credentials match this Server's user, false otherwise
      */
     public boolean matchesCredentials(String username, String passwordHash) {
-        if (!users.containsKey(username)) return false;
-        return users.get(username).getPasswordHash().equals(passwordHash);
+        UserData user = users.get(username);
+        return user != null && user.getPasswordHash().equals(passwordHash);
     }
 
     @Override
     public void run() {
+        if (nioEngine != null) {
+            nioEngine.run();
+            return;
+        }
         while (serverThread == Thread.currentThread()) {
             try {
                 Socket clientSocket = serverSocket.accept();
+                clientSocket.setTcpNoDelay(true); // messages leave whole, so waiting for more only delays them
                 createAndStartClientService(clientSocket);
             } catch (IOException e) {
                 System.err.println("Error accepting connection. Client will not be served...");
@@ -181,10 +316,19 @@ public class Server implements Runnable {
      * @param clientSocket to handle
      * @throws IOException when I/O error occurs
      */
-    synchronized void createAndStartClientService(Socket clientSocket) throws IOException {
+    void createAndStartClientService(Socket clientSocket) throws IOException {
         Service clientService = new Service(clientSocket, this, nextID());
         clientService.init();
-        new Thread(clientService).start();
+        addClientService(clientService); // before the thread starts, which may remove it at once
+        clientThreads.apply(clientService).start();
+    }
+
+    /**
+     * This method adds passed Service to connected clients.
+     *
+     * @param clientService to add
+     */
+    void addClientService(Service clientService) {
         clients.add(clientService);
         System.out.println("Client added. Number of clients: " + clients.size());
     }
@@ -195,8 +339,8 @@ public class Server implements Runnable {
      *
      * @param clientService to remove
      */
-    synchronized void removeClientService(Service clientService) {
-        clients.remove(clientService);
+    void removeClientService(Service clientService) {
+        if (!clients.remove(clientService)) return;
         clientService.close();
         System.out.println("Client removed. Number of clients: " + clients.size());
     }
@@ -204,15 +348,15 @@ public class Server implements Runnable {
     /**
      * ID of latest client.
      */
-    private int $lastID = -1;
+    private final AtomicInteger lastID = new AtomicInteger(-1);
 
     /**
      * Gets next client's ID.
      *
      * @return next client's ID.
      */
-    synchronized int nextID() {
-        return ++$lastID;
+    int nextID() {
+        return lastID.incrementAndGet();
     }
 
     /**
@@ -237,7 +381,6 @@ public class Server implements Runnable {
      * @return user's data or null, if username doesn't match any user
      */
     public UserData getUserData(String username) {
-        if (!users.containsKey(username)) return null;
         return users.get(username);
     }
 
@@ -247,7 +390,7 @@ public class Server implements Runnable {
      * @param username user's username
      * @param data     user's updated data
      */
-    synchronized public void updateUser(String username, UserData data) {
+    public void updateUser(String username, UserData data) {
         users.put(username, data);
     }
 
@@ -284,14 +427,99 @@ public class Server implements Runnable {
         final int LEN = 5;
         StringBuilder sb = new StringBuilder(LEN);
         do {
+            sb.setLength(0);
             for (int i = 0; i < LEN; i++)
                 sb.append(AB.charAt(rnd.nextInt(AB.length())));
-        } while (games.containsKey(sb.toString()));
+        } while (games.putIfAbsent(sb.toString(), game) != null);
 
-        this.games.put(sb.toString(), game);
         return sb.toString();
     }
 
+    /**
+     * Getter for this.turnMillis.
+     *
+     * @return time a player has for a move, in milliseconds, 0 if unlimited
+     */
+    public long getTurnMillis() {
+        return turnMillis;
+    }
+
+    /**
+     * Getter for this.resetPolicy.
+     *
+     * @return policy telling when object streams of clients are reset
+     */
+    ResetPolicy getResetPolicy() {
+        return resetPolicy;
+    }
+
+    /**
+     * Getter for this.outboundCapacity.
+     *
+     * @return largest number of messages waiting to be written to a client
+     */
+    int getOutboundCapacity() {
+        return outboundCapacity;
+    }
+
+    /**
+     * Getter for this.writers.
+     *
+     * @return executor running writer tasks of clients, null if clients are served by event loops
+     */
+    Executor getWriters() {
+        return writers;
+    }
+
+    /**
+     * Sums messages waiting to be written to all connected clients, see {@link Service#getQueueDepth()}.
+     *
+     * @return number of waiting messages
+     */
+    public int getQueuedMessages() {
+        int queued = 0;
+        for (Service s : clients) {
+            queued += s.getQueueDepth();
+        }
+        return queued;
+    }
+
+    /**
+     * Finds the longest time a message waited to be written to any connected client,
+     * see {@link Service#getMaxQueueNanos()}.
+     *
+     * @return longest waiting time, in nanoseconds
+     */
+    public long getMaxQueueNanos() {
+        long max = 0;
+        for (Service s : clients) {
+            max = Math.max(max, s.getMaxQueueNanos());
+        }
+        return max;
+    }
+
+    /**
+     * Sums bytes that streams of all connected clients retain, see {@link Service#getRetainedBytes()}.
+     *
+     * @return number of retained bytes
+     */
+    public long getRetainedBytes() {
+        long retained = 0;
+        for (Service s : clients) {
+            retained += s.getRetainedBytes();
+        }
+        return retained;
+    }
+
+    /**
+     * Getter for this.clock.
+     *
+     * @return executor running turn clocks of all games
+     */
+    public ScheduledExecutorService getClock() {
+        return clock;
+    }
+
     /**
      * Removes game matching passed game code from this.games.
      *
@@ -2,9 +2,7 @@ package communication;
 
 import game.Game;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.net.Socket;
 
 /**
@@ -43,9 +41,25 @@ public class Service implements Runnable {
     private ObjectInputStream input;
 
     /**
-     * Stream used to send data to client.
+     * Stream used to send data to client, serialized until the binary codec was negotiated, in frames after.
      */
-    private ObjectOutputStream output;
+    private MessageOutput output;
+
+    /**
+     * Messages waiting to be written to client.
+     */
+    private final OutboundQueue outbound;
+
+    /**
+     * Stream used to receive frames from client, once the binary codec was negotiated; null before.
+     */
+    private DataInputStream frameInput;
+
+    /**
+     * Indicating whether the client negotiated the binary codec, so that it applies moves of its game itself
+     * and learns its seat from {@link Header#SEAT} instead of every message carrying the game.
+     */
+    private volatile boolean binary;
 
     /**
      * Constructor for this.
@@ -58,6 +72,46 @@ public class Service implements Runnable {
         this.clientSocket = clientSocket;
         this.username = null;
         this.id = id;
+        this.outbound = new OutboundQueue(server.getOutboundCapacity());
+    }
+
+    /**
+     * Constructor for a Service whose client is not served through a blocking socket.
+     *
+     * @param server that called this Service
+     * @param id     client's id
+     */
+    protected Service(Server server, int id) {
+        this.server = server;
+        this.id = id;
+        this.outbound = new OutboundQueue(server.getOutboundCapacity());
+    }
+
+    /**
+     * Getter for this.id.
+     *
+     * @return this.id
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Getter for this.server.
+     *
+     * @return server running this Service
+     */
+    Server getServer() {
+        return server;
+    }
+
+    /**
+     * Getter for this.outbound.
+     *
+     * @return messages waiting to be written to client
+     */
+    OutboundQueue getOutbound() {
+        return outbound;
     }
 
     /**
@@ -75,7 +129,7 @@ public class Service implements Runnable {
      * @throws IOException when an I/O error occurs
      */
     public void init() throws IOException {
-        output = new ObjectOutputStream(clientSocket.getOutputStream());
+        output = new MessageOutput(clientSocket.getOutputStream(), server.getResetPolicy(), outbound, server.getWriters());
         input = new ObjectInputStream(clientSocket.getInputStream());
     }
 
@@ -93,6 +147,7 @@ public class Service implements Runnable {
         } finally {
             output = null;
             input = null;
+            frameInput = null;
             clientSocket = null;
         }
     }
@@ -100,99 +155,119 @@ public class Service implements Runnable {
     @Override
     public void run() {
         while (true) {
-            Protocol command = receive();
-            System.out.printf("[%d] Received %s%n", id, command);
-            Protocol answer;
-            switch (command.header) {
-                case CONNECT -> {
-                    answer = new Protocol(Header.CONNECTED);
-                    answer.put("id", (id = server.nextID()));
-                    send(answer);
-                }
-                case REGISTER -> {
-                    String username = (String) command.data.get("username");
-                    String passwordHash = (String) command.data.get("passwordHash");
-                    if (server.addUser(username, passwordHash)) {
-                        answer = new Protocol(Header.REGISTERED);
-                        answer.put("userdata", server.getUserData(username));
-                    } else {
-                        answer = new Protocol(Header.FAIL);
-                        answer.put("source", Header.REGISTER);
-                        answer.put("dialog", "This username is already taken!");
-                    }
-
-                    send(answer);
-                }
-                case LOGIN -> {
-                    String user = (String) command.data.get("username");
-                    String passwordHash = (String) command.data.get("passwordHash");
-
-                    if (!server.matchesCredentials(user, passwordHash)) {
-                        answer = new Protocol(Header.FAIL);
-                        answer.put("source", Header.LOGIN);
-                        answer.put("dialog", "Invalid credentials!");
-                    } else if (server.isConnected(user)) {
-                        answer = new Protocol(Header.FAIL);
-                        answer.put("source", Header.LOGIN);
-                        answer.put("dialog", "Already logged in!");
-                    } else {
-                        this.username = user;
-                        answer = new Protocol(Header.LOGGEDIN);
-                        answer.put("userdata", server.getUserData(user));
-                    }
+            if (!handle(receive())) return;
+        }
+    }
 
+    /**
+     * Handles a command received from the client.
+     *
+     * @param command received command
+     * @return false, if this Service stopped serving the client, true otherwise
+     */
+    boolean handle(Protocol command) {
+        System.out.printf("[%d] Received %s%n", id, command);
+        Protocol answer;
+        switch (command.header) {
+            case CONNECT -> {
+                answer = new Protocol(Header.CONNECTED);
+                answer.put("id", (id = server.nextID()));
+                if (command.data.get("codec") instanceof Integer codec && codec >= BinaryCodec.VERSION) {
+                    answer.put("codec", BinaryCodec.VERSION);
+                    binary = true;
+                    useBinaryCodec(answer);
+                } else {
                     send(answer);
                 }
-                case LOGGEDOUT -> {
-                    UserData userData = (UserData) command.data.get("userdata");
-                    server.updateUser(this.username, userData);
-                    server.removeClientService(this);
-                    return;
-                }
-                case JOINGAME -> {
-                    String gameCode = (String) command.data.get("code");
-                    if (!server.validateCode(gameCode)) {
-                        answer = new Protocol(Header.FAIL);
-                        answer.put("source", Header.JOINGAME);
-                        answer.put("dialog", "Invalid game code!");
-                    } else {
-                        this.game = server.getGame(gameCode);
-                        game.addPlayer(this);
-                        break;
-                    }
-                    send(answer);
-                }
-                case LEAVEGAME -> {
-                    if (game != null && game.hasStarted()) {
-                        game.left(this);
-                    }
+            }
+            case REGISTER -> {
+                String username = (String) command.data.get("username");
+                String passwordHash = (String) command.data.get("passwordHash");
+                if (server.addUser(username, passwordHash)) {
+                    answer = new Protocol(Header.REGISTERED);
+                    answer.put("userdata", server.getUserData(username));
+                } else {
+                    answer = new Protocol(Header.FAIL);
+                    answer.put("source", Header.REGISTER);
+                    answer.put("dialog", "This username is already taken!");
                 }
-                case LEAVELOBBY -> {
-                    if (game == null || game.hasStarted()) break;
-                    game.leftLobby(this);
+
+                send(answer);
+            }
+            case LOGIN -> {
+                String user = (String) command.data.get("username");
+                String passwordHash = (String) command.data.get("passwordHash");
+
+                if (!server.matchesCredentials(user, passwordHash)) {
+                    answer = new Protocol(Header.FAIL);
+                    answer.put("source", Header.LOGIN);
+                    answer.put("dialog", "Invalid credentials!");
+                } else if (server.isConnected(user)) {
+                    answer = new Protocol(Header.FAIL);
+                    answer.put("source", Header.LOGIN);
+                    answer.put("dialog", "Already logged in!");
+                } else {
+                    this.username = user;
+                    answer = new Protocol(Header.LOGGEDIN);
+                    answer.put("userdata", server.getUserData(user));
                 }
-                case CREATEGAME -> {
-                    if (command.data.containsKey("game")) {
-                        game = new GameHandler(server, this, (Game) command.data.get("game"));
-                    } else {
-                        game = new GameHandler(server, this);
-                    }
-                    answer = new Protocol(Header.CREATEDGAME);
-                    answer.put("code", game.getGameCode());
-                    send(answer);
+
+                send(answer);
+            }
+            case LOGGEDOUT -> {
+                UserData userData = (UserData) command.data.get("userdata");
+                server.updateUser(this.username, userData);
+                server.removeClientService(this);
+                return false;
+            }
+            case JOINGAME -> {
+                String gameCode = (String) command.data.get("code");
+                if (!server.validateCode(gameCode)) {
+                    answer = new Protocol(Header.FAIL);
+                    answer.put("source", Header.JOINGAME);
+                    answer.put("dialog", "Invalid game code!");
+                } else {
+                    this.game = server.getGame(gameCode);
+                    game.addPlayer(this);
+                    break;
                 }
-                case STARTGAME -> game.start();
-                case UPDATEGAME -> game.updateGame((Game) command.data.get("game"));
-                case STOP -> {
-                    server.removeClientService(this);
-                    return;
+                send(answer);
+            }
+            case LEAVEGAME -> {
+                if (game != null && game.hasStarted()) {
+                    game.left(this);
                 }
-                case NULLCOMMAND -> {
-                    return;
+            }
+            case LEAVELOBBY -> {
+                if (game == null || game.hasStarted()) break;
+                game.leftLobby(this);
+            }
+            case CREATEGAME -> {
+                if (command.data.containsKey("game")) {
+                    game = new GameHandler(server, this, (Game) command.data.get("game"));
+                } else {
+                    game = new GameHandler(server, this);
                 }
+                answer = new Protocol(Header.CREATEDGAME);
+                answer.put("code", game.getGameCode());
+                send(answer);
+            }
+            case STARTGAME -> game.start();
+            case SYNCGAME -> {
+                if (game != null) game.sendSnapshot(this);
+            }
+            case MOVE -> {
+                if (game != null && command.data.get("move") instanceof Integer move) game.applyMove(this, move);
+            }
+            case STOP -> {
+                server.removeClientService(this);
+                return false;
+            }
+            case NULLCOMMAND -> {
+                return false;
             }
-
         }
+        return true;
     }
 
     /**
@@ -201,13 +276,61 @@ public class Service implements Runnable {
      * @param command to send
      */
     protected void send(Protocol command) {
-        if (output != null) {
-            System.out.printf("[%d] Sending %s%n", id, command);
-            try {
-                output.writeObject(command);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        MessageOutput output = this.output;
+        if (output == null) return;
+        System.out.printf("[%d] Sending %s%n", id, command);
+        try {
+            output.send(command);
+        } catch (IOException e) {
+            sendFailed(e);
+        }
+    }
+
+    /**
+     * Used to send a message shared with other clients, without encoding it again.
+     *
+     * @param message to send
+     */
+    protected void send(Broadcast message) {
+        MessageOutput output = this.output;
+        if (output == null) return;
+        System.out.printf("[%d] Sending %s%n", id, message);
+        try {
+            output.send(message);
+        } catch (IOException e) {
+            sendFailed(e);
+        }
+    }
+
+    /**
+     * Disconnects the client after a message could not be sent to it, as it would miss the message:
+     * usually its outbound queue is full, as it reads slower than it is sent to.
+     *
+     * @param e reason the message was not sent
+     */
+    protected void sendFailed(IOException e) {
+        System.err.println("Error sending to client (" + id + "), " + e.getMessage() + "; disconnecting.");
+        server.removeClientService(this);
+    }
+
+    /**
+     * Sends passed answer to {@link Header#CONNECT} and switches to the binary codec: everything sent after
+     * the answer is encoded by {@link BinaryCodec}, everything received after the request is read in frames.
+     * The client waits for the answer before sending anything else.
+     *
+     * @param connected answer to send
+     */
+    protected void useBinaryCodec(Protocol connected) {
+        MessageOutput output = this.output;
+        Socket clientSocket = this.clientSocket;
+        if (output == null || clientSocket == null) return;
+        System.out.printf("[%d] Sending %s%n", id, connected);
+        try {
+            output.useFrames(connected, FrameFormat.BINARY);
+            // object streams read no further than the request, so the rest of the input is in frames
+            frameInput = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -218,6 +341,9 @@ public class Service implements Runnable {
      */
     private Protocol receive() {
         try {
+            if (frameInput != null) {
+                return Frames.read(frameInput);
+            }
             return (Protocol) input.readObject();
         } catch (IOException | ClassNotFoundException ioe) {
             System.err.println("Error reading client (" + id + "), " + ioe);
@@ -225,6 +351,61 @@ public class Service implements Runnable {
         }
     }
 
+    /**
+     * Gets the number of bytes sent to the client that its stream still keeps, see {@link MessageOutput}.
+     *
+     * @return number of retained bytes, 0 if messages are not serialized
+     */
+    public long getRetainedBytes() {
+        MessageOutput output = this.output;
+        return output == null ? 0 : output.retainedBytes();
+    }
+
+    /**
+     * Gets the number of messages waiting to be written to the client.
+     *
+     * @return number of waiting messages
+     */
+    public int getQueueDepth() {
+        return outbound.depth();
+    }
+
+    /**
+     * Gets the largest number of messages that waited to be written to the client at once.
+     *
+     * @return largest number of waiting messages
+     */
+    public int getMaxQueueDepth() {
+        return outbound.maxDepth();
+    }
+
+    /**
+     * Gets the average time a message waited to be written to the client, from being sent until written.
+     *
+     * @return average waiting time, in nanoseconds
+     */
+    public long getAverageQueueNanos() {
+        return outbound.averageWaitNanos();
+    }
+
+    /**
+     * Gets the longest time a message waited to be written to the client.
+     *
+     * @return longest waiting time, in nanoseconds
+     */
+    public long getMaxQueueNanos() {
+        return outbound.maxWaitNanos();
+    }
+
+    /**
+     * Getter for this.binary.
+     *
+     * @return true, if the client negotiated the binary codec, false otherwise
+     */
+    public boolean usesBinaryCodec() {
+        return binary;
+    }
+
     /**
      * Setter for this.game.
      *
@@ -10,6 +10,11 @@ import java.util.ArrayList;
  */
 public class UserData implements Serializable {
 
+    /**
+     * Version of the serialized form, pinned as user data is stored by the server.
+     */
+    private static final long serialVersionUID = 8709201501085144049L;
+
     /**
      * Client's username.
      */
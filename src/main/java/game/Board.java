@@ -1,42 +1,158 @@
 package game;
 
-
-import java.awt.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.IntStream;
 
 /**
  * This class represents a Board of Azul.
  */
 public class Board implements Serializable {
+    /**
+     * Version of the serialized form, pinned as boards are stored within games.
+     */
+    private static final long serialVersionUID = 8754588458182658668L;
+
     /**
      * Game which this board is part of
      */
     private final Game game;
 
+    /**
+     * All tiles, indexed by their ordinal.
+     */
+    private static final Tile[] TILES = Tile.values();
+
     /**
      * Score on this board.
      */
     private int score = 0;
 
     /**
-     * Pattern of the pattern board.
+     * All tiles placed by the user, stored as a bitboard.
+     * Bit {@code row * 5 + column} is set when the corresponding wall spot is covered.
      */
-    private final Tile[][] pattern = new Tile[5][5];
+    private int wall = 0;
 
     /**
-     * All tiles placed by the user.
+     * Masks of every wall row.
      */
-    private final boolean[][] placedTiles = new boolean[5][5];
+    private static final int[] ROW_MASKS = new int[5];
+
+    /**
+     * Masks of every wall column.
+     */
+    private static final int[] COLUMN_MASKS = new int[5];
+
+    /**
+     * Masks of all wall spots of a single colour, indexed by Tile's ordinal.
+     */
+    private static final int[] COLOR_MASKS = new int[5];
+
+    /**
+     * Bit index of the wall spot of given colour in given row, indexed by {@code row * 5 + tile.ordinal()}.
+     */
+    private static final int[] CELLS = new int[25];
+
+    /**
+     * Colour's ordinal of every wall spot, indexed by its bit index.
+     */
+    private static final byte[] CELL_COLORS = new byte[25];
+
+    /**
+     * Bonus for a completed row.
+     */
+    private static final int ROW_BONUS = 2;
+
+    /**
+     * Bonus for a completed column.
+     */
+    private static final int COLUMN_BONUS = 7;
+
+    /**
+     * Bonus for all tiles of a colour.
+     */
+    private static final int COLOR_BONUS = 10;
+
+    /**
+     * Denominator of this.potential: a line of the wall holding n of its 5 tiles
+     * counts {@code n * n / POTENTIAL_SCALE} of its bonus.
+     */
+    public static final int POTENTIAL_SCALE = 25;
+
+    /**
+     * Mask of the first spot of every row.
+     */
+    private static final int ROW_STARTS = 0b00001_00001_00001_00001_00001;
+
+    /**
+     * Length of a horizontal run of tiles, indexed by {@code rowBits * 5 + column}.
+     */
+    private static final byte[] RUN_LENGTHS = new byte[32 * 5];
+
+    static {
+        // column of every colour in the first row; each next row is rotated by one
+        Tile[] order = {Tile.BLUE, Tile.YELLOW, Tile.RED, Tile.BLACK, Tile.GREEN};
+        for (int row = 0; row < 5; row++) {
+            ROW_MASKS[row] = 0b11111 << (row * 5);
+            COLUMN_MASKS[row] = ROW_STARTS << row;
+            for (int column = 0; column < 5; column++) {
+                Tile tile = order[(column - row + 5) % 5];
+                CELLS[row * 5 + tile.ordinal()] = row * 5 + column;
+                CELL_COLORS[row * 5 + column] = (byte) tile.ordinal();
+                COLOR_MASKS[tile.ordinal()] |= 1 << (row * 5 + column);
+            }
+        }
+
+        for (int bits = 0; bits < 32; bits++) {
+            for (int column = 0; column < 5; column++) {
+                int length = 0;
+                if ((bits & (1 << column)) != 0) {
+                    int i = column;
+                    while (i < 5 && (bits & (1 << i)) != 0) i++;
+                    int j = column;
+                    while (j >= 0 && (bits & (1 << j)) != 0) j--;
+                    length = i - j - 1;
+                }
+                RUN_LENGTHS[bits * 5 + column] = (byte) length;
+            }
+        }
+    }
 
     /**
      * Amount of points lost due to tiles falling to the floor.
      */
     private int floor = 0;
 
+    /**
+     * Colours accepted by every pattern row: bit {@code row * 5 + tile.ordinal()} is set when the row
+     * is not full, holds no other colour and the colour's wall spot in the row is free.
+     * Kept up to date whenever a queue or the wall changes.
+     */
+    private int allowed = (1 << 25) - 1;
+
+    /**
+     * Number of completed wall rows.
+     */
+    private int completedRows;
+
+    /**
+     * End-game bonus earned by completed rows, columns and colours of the wall.
+     */
+    private int bonus;
+
+    /**
+     * End-game bonus potential of the wall in units of 1 / {@link #POTENTIAL_SCALE}:
+     * the sum of {@code bonus * n * n} over all rows, columns and colours, n being the number of tiles placed in each.
+     */
+    private int potential;
+
+    /**
+     * Zobrist hash of this board's state.
+     */
+    private long hash = 0;
+
     /**
      * Containing tiles put into each tile queue.
      */
@@ -49,6 +165,11 @@ public class Board implements Serializable {
      * place on the main board while the rest return to the pouch.
      */
     public class TileQueue implements Serializable {
+        /**
+         * Version of the serialized form of a queue.
+         */
+        private static final long serialVersionUID = -5561119421463121150L;
+
         private Tile color;
         private final int size;
         private int counter = 0;
@@ -57,6 +178,17 @@ public class Board implements Serializable {
             this.size = size;
         }
 
+        /**
+         * Copy constructor for this.
+         *
+         * @param other queue to copy
+         */
+        public TileQueue(TileQueue other) {
+            this.size = other.size;
+            this.color = other.color;
+            this.counter = other.counter;
+        }
+
         /**
          * Adding a tile to the queue
          *
@@ -73,15 +205,27 @@ public class Board implements Serializable {
             if (isFull()) {
                 throw new FullTileQueueException("This queue is already full");
             }
-            counter += 1;
+            set(tile, counter + 1);
+        }
+
+        /**
+         * Sets contents of this queue, keeping hash of the board up to date.
+         *
+         * @param color   colour of tiles in this queue
+         * @param counter number of tiles in this queue
+         */
+        private void set(Tile color, int counter) {
+            hash ^= Zobrist.queue(size - 1, this.color, this.counter) ^ Zobrist.queue(size - 1, color, counter);
+            this.color = color;
+            this.counter = counter;
+            updateAllowed(size - 1);
         }
 
         /**
          * Used for clearing the queue from all tiles
          */
         public void clear() {
-            color = null;
-            counter = 0;
+            set(null, 0);
         }
 
         /**
@@ -112,13 +256,12 @@ public class Board implements Serializable {
         }
 
         /**
-         * Gets Color of this queue.
+         * Getter for this.color.
          *
-         * @return Color of this queue.
+         * @return colour of tiles in this queue, null if it is empty
          */
-        public Color getColor() {
-            if (this.color == null) return null;
-            return this.color.getColor();
+        public Tile getColor() {
+            return color;
         }
     }
 
@@ -141,7 +284,6 @@ public class Board implements Serializable {
      * Main board constructor connects the constructed board to appropriate game.
      * Creates all needed object for the game such as:
      * - 5 Queues with different size
-     * - Pattern of the main board
      *
      * @param game Object of game class to which we need to connect the game
      */
@@ -151,14 +293,27 @@ public class Board implements Serializable {
         for (int i = 0; i < 5; i++) {
             tileQueues[i] = new TileQueue(i + 1);
         }
+    }
 
-        //placing the pattern
-        ArrayList<Tile> order = new ArrayList<>(List.of(Tile.BLUE, Tile.YELLOW, Tile.RED, Tile.BLACK, Tile.GREEN));
-        for (Tile[] row : pattern) {
-            for (int i = 0; i < 5; i++) {
-                row[i] = order.get(i);
-            }
-            Collections.rotate(order, 1);
+    /**
+     * Copy constructor, connects the copy to passed game.
+     *
+     * @param other board to copy
+     * @param game  copy of other's game to which the copy belongs
+     */
+    public Board(Board other, Game game) {
+        this.game = game;
+        this.score = other.score;
+        this.wall = other.wall;
+        this.floor = other.floor;
+        this.hash = other.hash;
+        this.allowed = other.allowed;
+        this.completedRows = other.completedRows;
+        this.bonus = other.bonus;
+        this.potential = other.potential;
+
+        for (int i = 0; i < 5; i++) {
+            tileQueues[i] = new TileQueue(other.tileQueues[i]);
         }
     }
 
@@ -168,13 +323,78 @@ public class Board implements Serializable {
      * @param queue queue to place a tile to
      */
     private void placeTile(TileQueue queue) {
-        for (int i = 0; i < 5; i++) {
-            if (pattern[queue.size - 1][i].equals(queue.color)) {
-                this.placedTiles[queue.size - 1][i] = true;
-                addScore(queue.size - 1, i);
-                break;
-            }
+        int cell = cellOf(queue.size - 1, queue.color);
+        potential += potentialGain(wall, cell);
+        wall |= 1 << cell;
+        hash ^= Zobrist.WALL[cell];
+        updateAllowed(cell / 5);
+        addScore(cell / 5, cell % 5);
+        if ((wall & ROW_MASKS[cell / 5]) == ROW_MASKS[cell / 5]) {
+            completedRows++;
+            bonus += ROW_BONUS;
+            game.rowCompleted();
         }
+        if ((wall & COLUMN_MASKS[cell % 5]) == COLUMN_MASKS[cell % 5]) {
+            bonus += COLUMN_BONUS;
+        }
+        if ((wall & COLOR_MASKS[CELL_COLORS[cell]]) == COLOR_MASKS[CELL_COLORS[cell]]) {
+            bonus += COLOR_BONUS;
+        }
+    }
+
+    /**
+     * Gets the change of this.potential caused by placing a tile on a free wall spot.
+     *
+     * @param wall wall bitboard before the tile is placed
+     * @param cell bit index of the spot
+     * @return change of the potential
+     */
+    private static int potentialGain(int wall, int cell) {
+        // (n + 1)^2 - n^2 = 2n + 1
+        return ROW_BONUS * (2 * Integer.bitCount(wall & ROW_MASKS[cell / 5]) + 1)
+                + COLUMN_BONUS * (2 * Integer.bitCount(wall & COLUMN_MASKS[cell % 5]) + 1)
+                + COLOR_BONUS * (2 * Integer.bitCount(wall & COLOR_MASKS[CELL_COLORS[cell]]) + 1);
+    }
+
+    /**
+     * Gets points scored for a tile placed on the wall.
+     *
+     * @param wall wall bitboard including the tile
+     * @param cell bit index of the tile's spot
+     * @return points scored for the tile
+     */
+    private static int placementPoints(int wall, int cell) {
+        int row = cell / 5;
+        int column = cell % 5;
+        int horizontal = RUN_LENGTHS[(wall >>> (row * 5) & 0b11111) * 5 + column];
+        int vertical = RUN_LENGTHS[columnBits(wall, column) * 5 + row];
+        if (horizontal == 1 && vertical == 1) {
+            return 1;
+        }
+        return (horizontal > 1 ? horizontal : 0) + (vertical > 1 ? vertical : 0);
+    }
+
+    /**
+     * Gets bit index of the wall spot matching passed row and colour.
+     *
+     * @param row  wall row
+     * @param tile colour of the spot
+     * @return bit index of the spot in this.wall
+     */
+    private static int cellOf(int row, Tile tile) {
+        return CELLS[row * 5 + tile.ordinal()];
+    }
+
+    /**
+     * Gathers bits of given wall column into the five lowest bits.
+     *
+     * @param wall   wall bitboard
+     * @param column column to gather
+     * @return column's bits, the first row being the lowest bit
+     */
+    private static int columnBits(int wall, int column) {
+        int bits = (wall & COLUMN_MASKS[column]) >>> column;
+        return (bits & 1) | (bits >>> 4 & 2) | (bits >>> 8 & 4) | (bits >>> 12 & 8) | (bits >>> 16 & 16);
     }
 
     /**
@@ -199,26 +419,40 @@ public class Board implements Serializable {
      * @return true, if user can put it, false otherwise
      */
     public boolean canAdd(int queueId, Tile tile) {
-        for (int i = 0; i < 5; i++) {
-            if (pattern[queueId][i].equals(tile)) {
-                return !placedTiles[queueId][i];
-            }
-        }
-        return true;
+        return (wall & (1 << cellOf(queueId, tile))) == 0;
+    }
+
+    /**
+     * Checks whether tiles of passed colour can be put in row queueId,
+     * i.e. the queue is not full, holds no other colour and the wall spot is free.
+     *
+     * @param queueId queue's id
+     * @param tile    colour to put
+     * @return true, if the queue accepts passed colour, false otherwise
+     */
+    public boolean accepts(int queueId, Tile tile) {
+        return (allowed & (1 << (queueId * 5 + tile.ordinal()))) != 0;
     }
 
     /**
-     * This method checks whether specific color matches a different javafx paint color.
+     * Recalculates colours accepted by a pattern row.
      *
-     * @param color  first color
-     * @param color2 javafx color
-     * @return true, if colors match, false otherwise
+     * @param row row's id
      */
-    public boolean canAddFilledQueue(Color color, javafx.scene.paint.Color color2) {
-        String colorString = color2.toString();
-        // parsing color2 into html color format
-        colorString = colorString.substring(2, colorString.length() - 2);
-        return Integer.toHexString(color.getRGB()).substring(2).equals(colorString);
+    private void updateAllowed(int row) {
+        TileQueue queue = tileQueues[row];
+        int colors;
+        if (queue.isFull()) {
+            colors = 0;
+        } else if (queue.counter != 0) {
+            colors = 1 << queue.color.ordinal();
+        } else {
+            colors = 0b11111;
+        }
+        for (int color = 0; color < 5; color++) {
+            if ((wall & (1 << CELLS[row * 5 + color])) != 0) colors &= ~(1 << color);
+        }
+        allowed = allowed & ~(0b11111 << (row * 5)) | colors << (row * 5);
     }
 
     /**
@@ -229,28 +463,147 @@ public class Board implements Serializable {
      */
     public void addTileToQueue(int queueId, Tile tile) {
         //checks whether the tile is already placed on the main board
-        for (int i = 0; i < 5; i++) {
-            if (tile.equals(pattern[queueId][i])) {
-                if (placedTiles[queueId][i]) {
-                    throw new IllegalArgumentException("The tile is already placed on the board");
-                }
-            }
+        if (!canAdd(queueId, tile)) {
+            throw new IllegalArgumentException("The tile is already placed on the board");
         }
         tileQueues[queueId].add(tile);
     }
 
     /**
-     * Used for adding multiple tiles
+     * Used for adding multiple tiles of a single colour. Tiles that do not fit in the queue are not added.
+     *
+     * @param queueId id of Queue
+     * @param tile    colour of added tiles
+     * @param count   number of tiles to add
+     * @return number of tiles that did not fit in the queue
+     * @throws IllegalArgumentException if the queue holds another colour or the colour is already placed on the wall
+     */
+    public int addTilesToQueue(int queueId, Tile tile, int count) {
+        TileQueue queue = tileQueues[queueId];
+        if (!accepts(queueId, tile)) {
+            if (queue.counter != 0 && queue.color != tile) {
+                throw new IllegalArgumentException("Wrong color");
+            }
+            if (!canAdd(queueId, tile)) {
+                throw new IllegalArgumentException("The tile is already placed on the board");
+            }
+        }
+        int added = Math.min(count, queue.size - queue.counter);
+        if (added > 0) {
+            queue.set(tile, queue.counter + added);
+        }
+        return count - added;
+    }
+
+    /**
+     * Gets contents of a queue packed into an int, to be restored with {@link #restoreQueue(int, int)}.
+     *
      * @param queueId id of Queue
-     * @param tiles ArrayList of tiles to add
-     */
-    public void addMulTilesToQueue(int queueId, ArrayList<Tile> tiles) {
-        for (Tile tile : tiles) {
-            try {
-                addTileToQueue(queueId, tile);
-            } catch (FullTileQueueException e) {
-                addTileToFloor();
+     * @return colour's ordinal (7 if empty) in bits 3-5 and number of tiles in bits 0-2
+     */
+    int queueState(int queueId) {
+        TileQueue queue = tileQueues[queueId];
+        return (queue.counter == 0 ? 7 : queue.color.ordinal()) << 3 | queue.counter;
+    }
+
+    /**
+     * Restores contents of a queue saved with {@link #queueState(int)}.
+     *
+     * @param queueId id of Queue
+     * @param state   packed contents of the queue
+     */
+    void restoreQueue(int queueId, int state) {
+        int counter = state & 7;
+        tileQueues[queueId].set(counter == 0 ? null : TILES[state >>> 3], counter);
+    }
+
+    /**
+     * Restores number of tiles on the floor.
+     *
+     * @param floor number of tiles on the floor
+     */
+    void restoreFloor(int floor) {
+        setFloor(floor);
+    }
+
+    /**
+     * Restores state of this board from its earlier copy, keeping this board's identity.
+     *
+     * @param other copy of this board to restore
+     */
+    void restore(Board other) {
+        this.score = other.score;
+        this.wall = other.wall;
+        this.floor = other.floor;
+        this.hash = other.hash;
+        this.allowed = other.allowed;
+        this.completedRows = other.completedRows;
+        this.bonus = other.bonus;
+        this.potential = other.potential;
+        for (int i = 0; i < 5; i++) {
+            tileQueues[i].color = other.tileQueues[i].color;
+            tileQueues[i].counter = other.tileQueues[i].counter;
+        }
+    }
+
+    /**
+     * Writes state of this board: the wall bitboard as an int, the score as a short, the floor as a byte
+     * and contents of all queues, see {@link #queueState(int)}, 6 bits each, the first queue lowest, as an int.
+     * Read with {@link #read(DataInput)}.
+     *
+     * @param out output to write to
+     * @throws IOException when I/O error occurs
+     */
+    void write(DataOutput out) throws IOException {
+        int queues = 0;
+        for (int row = 0; row < 5; row++) {
+            queues |= queueState(row) << 6 * row;
+        }
+        out.writeInt(wall);
+        out.writeShort(score);
+        out.writeByte(floor);
+        out.writeInt(queues);
+    }
+
+    /**
+     * Reads state of this new board written with {@link #write(DataOutput)}, deriving everything else from it.
+     * Does not count completed rows in the game.
+     *
+     * @param in input to read from
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the state is not valid
+     */
+    void read(DataInput in) throws IOException {
+        int wall = in.readInt();
+        int score = in.readUnsignedShort();
+        int floor = in.readUnsignedByte();
+        int queues = in.readInt();
+        if (wall >>> 25 != 0) {
+            throw new IllegalArgumentException("Invalid wall " + Integer.toHexString(wall));
+        }
+        for (int cell = 0; cell < 25; cell++) {
+            if ((wall & (1 << cell)) == 0) continue;
+            potential += potentialGain(this.wall, cell);
+            this.wall |= 1 << cell;
+            hash ^= Zobrist.WALL[cell];
+        }
+        for (int i = 0; i < 5; i++) {
+            if ((wall & ROW_MASKS[i]) == ROW_MASKS[i]) {
+                completedRows++;
+                bonus += ROW_BONUS;
+            }
+            if ((wall & COLUMN_MASKS[i]) == COLUMN_MASKS[i]) bonus += COLUMN_BONUS;
+            if ((wall & COLOR_MASKS[i]) == COLOR_MASKS[i]) bonus += COLOR_BONUS;
+        }
+        setScore(score);
+        setFloor(floor);
+        for (int row = 0; row < 5; row++) {
+            int state = queues >>> 6 * row & 0x3F;
+            int counter = state & 7;
+            if (counter > row + 1 || counter != 0 && (state >>> 3 >= 5 || !canAdd(row, TILES[state >>> 3]))) {
+                throw new IllegalArgumentException("Invalid queue " + row + " state " + state);
             }
+            restoreQueue(row, state);
         }
     }
 
@@ -258,24 +611,60 @@ public class Board implements Serializable {
      * Place a tile on the floor field
      */
     public void addTileToFloor() {
-        floor += 1;
+        setFloor(floor + 1);
+    }
+
+    /**
+     * Place multiple tiles on the floor field
+     *
+     * @param count number of tiles to place
+     */
+    public void addTilesToFloor(int count) {
+        setFloor(floor + count);
+    }
+
+    /**
+     * Setter for this.floor, keeping this.hash up to date.
+     *
+     * @param floor to be assigned
+     */
+    private void setFloor(int floor) {
+        hash ^= Zobrist.floor(this.floor) ^ Zobrist.floor(floor);
+        this.floor = floor;
+    }
+
+    /**
+     * Setter for this.score, keeping this.hash up to date.
+     *
+     * @param score to be assigned
+     */
+    private void setScore(int score) {
+        hash ^= Zobrist.score(this.score) ^ Zobrist.score(score);
+        this.score = score;
     }
 
     /**
      * Calculating floor score on the end of the round
      */
     public void calculateFloorScore() {
+        setScore(Math.max(score - floorPenalty(floor), 0));
+        setFloor(0);
+    }
+
+    /**
+     * Calculates points lost for tiles on the floor.
+     *
+     * @param floor number of tiles on the floor
+     * @return number of points lost
+     */
+    public static int floorPenalty(int floor) {
         if (floor < 3) {
-            score -= floor;
+            return floor;
         } else if (floor < 6) {
-            score -= 2 + (floor - 2) * 2;
+            return 2 + (floor - 2) * 2;
         } else {
-            score -= 8 + (floor - 5) * 3;
+            return 8 + (floor - 5) * 3;
         }
-        if (score < 0) {
-            score = 0;
-        }
-        this.floor = 0;
     }
 
     /**
@@ -285,85 +674,106 @@ public class Board implements Serializable {
      * @param column index of column the tile was placed in
      */
     public void addScore(int row, int column) {
-        //TODO: make this shorter and more readable
-        int counter = 0;
-        boolean isRowTouching = false;
-        boolean isColumnTouching = false;
-        //checking row
-        for (int i = column + 1; i < 5; i++) {
-            if (placedTiles[row][i]) {
-                counter++;
-                isRowTouching = true;
-            } else {
-                break;
-            }
-        }
-        for (int i = column - 1; i > -1; i--) {
-            if (placedTiles[row][i]) {
-                counter++;
-                isRowTouching = true;
-            } else {
-                break;
-            }
-        }
-        //checking columns
-        for (int i = row + 1; i < 5; i++) {
-            if (placedTiles[i][column]) {
-                counter++;
-                isColumnTouching = true;
-            } else {
-                break;
-            }
-        }
-        for (int i = row - 1; i > -1; i--) {
-            if (placedTiles[i][column]) {
-                counter++;
-                isColumnTouching = true;
-            } else {
-                break;
-            }
-        }
-        score += (isColumnTouching && isRowTouching) ? counter + 2 : counter + 1;
+        setScore(score + placementPoints(wall, row * 5 + column));
     }
 
     /**
      * Calculating a final score on the end of the game
      */
     public void calculateFinalScore() {
-        //check for complete rows
-        for (boolean[] row : placedTiles) {
-            if (IntStream.range(0, row.length).allMatch(i -> row[i])) {
-                score += 2;
-            }
-        }
+        setScore(score + bonus);
+    }
 
-        //check complete columns
-        for (int column = 0; column < 5; column++) {
-            boolean isComplete = true;
-            for (int row = 0; row < 5; row++) {
-                if (!placedTiles[row][column]) {
-                    isComplete = false;
-                    break;
-                }
-            }
-            if (isComplete) {
-                score += 7;
+    /**
+     * Projects the final score of this board: the score after the full pattern rows are placed
+     * on the wall and the floor penalty is paid at the end of this round, plus the bonus potential
+     * of the wall after the placement (see {@link #getBonusPotential()}). Once the game has ended
+     * the score is final and returned as is. Takes time proportional to the number of full pattern rows.
+     *
+     * @return projected score
+     */
+    public float projectedScore() {
+        return project(-1, null, floor);
+    }
+
+    /**
+     * Projects the final score of this board, as {@link #projectedScore()} does, after each of passed moves
+     * was made by this board's player instead. The moves are not made and this board does not change.
+     *
+     * @param moves       moves legal for this board's player, packed as described in {@link Move}
+     * @param count       number of moves to project
+     * @param projections buffer receiving the projected score after every move, at the move's index
+     */
+    public void projectMoves(int[] moves, int count, float[] projections) {
+        for (int i = 0; i < count; i++) {
+            int source = Move.source(moves[i]);
+            Tile color = Move.color(moves[i]);
+            int target = Move.target(moves[i]);
+            int picked = game.count(source, color);
+            int floor = source == Move.MIDDLE && game.isFirst() ? this.floor + 1 : this.floor;
+            if (target == Move.FLOOR) {
+                projections[i] = project(-1, null, floor + picked);
+            } else {
+                TileQueue queue = tileQueues[target];
+                int fits = Math.min(picked, queue.size - queue.counter);
+                projections[i] = project(queue.counter + fits == queue.size ? target : -1, color, floor + picked - fits);
             }
         }
+    }
 
-        //check for same color
-        for (int column = 0; column < 5; column++) {
-            boolean isComplete = true;
-            for (int row = 0; row < 5; row++) {
-                if (!placedTiles[row][(column + row) % 5]) {
-                    isComplete = false;
-                    break;
-                }
-            }
-            if (isComplete) {
-                score += 10;
-            }
+    /**
+     * Projects the final score of this board with one more full pattern row and a different floor.
+     *
+     * @param fullRow pattern row that is full in addition to the full ones, -1 for none
+     * @param color   colour of fullRow
+     * @param floor   number of tiles on the floor
+     * @return projected score
+     */
+    private float project(int fullRow, Tile color, int floor) {
+        if (game.isEndOfGame()) {
+            return score;
+        }
+        int wall = this.wall;
+        int potential = this.potential;
+        int points = 0;
+        for (int row = 0; row < 5; row++) {
+            Tile placed = row == fullRow ? color : tileQueues[row].isFull() ? tileQueues[row].color : null;
+            if (placed == null) continue;
+            int cell = cellOf(row, placed);
+            potential += potentialGain(wall, cell);
+            wall |= 1 << cell;
+            points += placementPoints(wall, cell);
         }
+        return Math.max(score + points - floorPenalty(floor), 0) + potential / (float) POTENTIAL_SCALE;
+    }
+
+    /**
+     * Getter for this.bonus.
+     *
+     * @return end-game bonus earned by completed rows, columns and colours of the wall so far
+     */
+    public int getBonus() {
+        return bonus;
+    }
+
+    /**
+     * Gets end-game bonus potential of the wall: every row, column and colour holding n of its 5 tiles
+     * counts {@code n * n / 25} of its bonus, so completed ones count in full and nearly completed ones
+     * count the most of the rest. Kept up to date as tiles are placed, so this takes constant time.
+     *
+     * @return bonus potential, at least {@link #getBonus()}
+     */
+    public float getBonusPotential() {
+        return potential / (float) POTENTIAL_SCALE;
+    }
+
+    /**
+     * Gets points that will be lost for the tiles on the floor at the end of this round.
+     *
+     * @return floor penalty
+     */
+    public int getFloorPenalty() {
+        return floorPenalty(floor);
     }
 
     /**
@@ -372,12 +782,16 @@ public class Board implements Serializable {
      * @return boolean value: True if the row
      */
     public boolean isAnyRowCompleted() {
-        for (boolean[] row : placedTiles) {
-            if (IntStream.range(0, row.length).allMatch(i -> row[i])) {
-                return true;
-            }
-        }
-        return false;
+        return completedRows != 0;
+    }
+
+    /**
+     * Getter for this.completedRows.
+     *
+     * @return number of completed wall rows
+     */
+    public int getCompletedRows() {
+        return completedRows;
     }
 
     /**
@@ -389,6 +803,15 @@ public class Board implements Serializable {
         return score;
     }
 
+    /**
+     * Getter for this.hash.
+     *
+     * @return Zobrist hash of this board's state
+     */
+    public long getHash() {
+        return hash;
+    }
+
     /**
      * Getter for this.tileQueues.
      *
@@ -408,11 +831,33 @@ public class Board implements Serializable {
     }
 
     /**
-     * Getter for this.placedTiles.
+     * Getter for this.allowed.
+     *
+     * @return colours accepted by every pattern row, bit {@code row * 5 + tile.ordinal()} set for every accepted colour
+     */
+    public int getAllowed() {
+        return allowed;
+    }
+
+    /**
+     * Getter for this.wall.
+     *
+     * @return this.wall.
+     */
+    public int getWall() {
+        return wall;
+    }
+
+    /**
+     * Gets all tiles placed by the user, derived from this.wall.
      *
-     * @return this.placedTiles.
+     * @return placed tiles, indexed by row and column
      */
     public boolean[][] getPlacedTiles() {
+        boolean[][] placedTiles = new boolean[5][5];
+        for (int i = 0; i < 25; i++) {
+            placedTiles[i / 5][i % 5] = (wall & (1 << i)) != 0;
+        }
         return placedTiles;
     }
 }
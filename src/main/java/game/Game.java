@@ -1,15 +1,36 @@
 package game;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Main Game Class used for initializing a single game which consists of desired number
  * of players from 2-4, according number of workshops and a Tile pouch
  */
 public class Game implements Serializable {
+    /**
+     * Version of the serialized form, pinned so that compatible changes keep stored games readable.
+     */
+    private static final long serialVersionUID = -5504085971592609387L;
+
+    /**
+     * All tiles, indexed by their ordinal.
+     */
+    private static final Tile[] TILES = Tile.values();
+
+    /**
+     * Number of bytes written by {@link #writeTo(ByteBuffer)}.
+     */
+    public static final int ENCODED_SIZE = 76;
+
     /**
      * Boards of this game corresponding and representing this Game's players.
      */
@@ -26,9 +47,30 @@ public class Game implements Serializable {
     public final Workshop[] workshops;
 
     /**
-     * Tiles dropped to the middle.
+     * Number of tiles of every colour dropped to the middle, indexed by Tile's ordinal.
+     */
+    private final int[] middleField = new int[5];
+
+    /**
+     * Number of all tiles dropped to the middle.
+     */
+    private int middleSize;
+
+    /**
+     * Number of all tiles in the workshops.
      */
-    private final LinkedList<Tile> middleField;
+    private int workshopTiles;
+
+    /**
+     * Number of wall rows completed on all boards.
+     */
+    private int completedRows;
+
+    /**
+     * ID of the player with the highest score, the lowest ID on a tie. Scores change only
+     * when a round or the game ends, so this is updated then.
+     */
+    private int leader;
 
     /**
      * Flag indicating whether tiles where drawn from the middle field this round.
@@ -45,6 +87,48 @@ public class Game implements Serializable {
      */
     private int currentPlayerTurn;
 
+    /**
+     * Seed from which all randomness of this game is derived. It stays on the server, as every tile the pouch
+     * will draw follows from it: it is neither serialized nor written, and a game read back draws from a new one.
+     */
+    private transient long seed;
+
+    /**
+     * States of the workshops to fill them with at the end of the current move, see {@link #apply(int, int[])},
+     * null if they are filled from the pouch.
+     */
+    private transient int[] dealt;
+
+    /**
+     * Zobrist hash of this game's state, not including the boards.
+     */
+    private long hash;
+
+    /**
+     * Number of rounds finished in this game.
+     */
+    private int round;
+
+    /**
+     * Flag indicating whether final scores of this game were already calculated.
+     */
+    private boolean hasEnded;
+
+    /**
+     * Records of moves made with {@link #make(int)}, the last made move last.
+     */
+    private transient long[] undoRecords;
+
+    /**
+     * Number of records in this.undoRecords.
+     */
+    private transient int undoSize;
+
+    /**
+     * Copies of this game made before moves that ended a round, the last one last.
+     */
+    private transient ArrayList<Game> roundSnapshots;
+
     /**
      * String representing a specific time when this game was saved.
      */
@@ -88,6 +172,11 @@ public class Game implements Serializable {
      */
     public class Workshop implements Serializable {
 
+        /**
+         * Version of the serialized form of a workshop.
+         */
+        private static final long serialVersionUID = 3437323876294516191L;
+
         /**
          * Tiles stored in this Workshop.
          */
@@ -98,21 +187,76 @@ public class Game implements Serializable {
          */
         private boolean isEmpty;
 
+        /**
+         * Index of this Workshop in workshops of its game.
+         */
+        private final int index;
+
         /**
          * Constructor for this.
+         *
+         * @param index index of this Workshop in workshops of its game
          */
-        public Workshop() {
+        public Workshop(int index) {
             this.isEmpty = true;
+            this.index = index;
+        }
+
+        /**
+         * Copy constructor for this.
+         *
+         * @param other workshop to copy
+         */
+        public Workshop(Workshop other) {
+            System.arraycopy(other.tiles, 0, tiles, 0, 4);
+            this.isEmpty = other.isEmpty;
+            this.index = other.index;
+        }
+
+        /**
+         * Gets Zobrist key of tiles stored in this Workshop.
+         *
+         * @return XOR of keys of counts of every stored colour
+         */
+        private long key() {
+            // counts of colours packed 3 bits each, so that hashing a move allocates nothing
+            int counts = 0;
+            for (Tile tile : tiles) {
+                if (tile != null) counts += 1 << 3 * tile.ordinal();
+            }
+            long key = 0;
+            for (int color = 0; color < 5; color++) {
+                key ^= Zobrist.workshop(index, color, counts >>> 3 * color & 7);
+            }
+            return key;
+        }
+
+        /**
+         * Counts tiles stored in this Workshop.
+         *
+         * @return number of tiles
+         */
+        private int size() {
+            int size = 0;
+            for (Tile tile : tiles) {
+                if (tile != null) size++;
+            }
+            return size;
         }
 
         /**
          * Fills workshop with tiles.
          */
         public void fillWithTiles() {
+            hash ^= key();
+            workshopTiles -= size();
             for (int i = 0; i < 4; i++) {
-                tiles[i] = pouch.getTile();
+                tiles[i] = dealt == null ? pouch.getTile() : pouch.take(dealt[index] >>> 3 * i & 7);
             }
-            isEmpty = false;
+            workshopTiles += size();
+            hash ^= key();
+            //pouch might have run out of tiles
+            isEmpty = tiles[0] == null;
         }
 
         /**
@@ -120,15 +264,17 @@ public class Game implements Serializable {
          * to the middle field
          *
          * @param color Color
-         * @return all picked Tiles with given Color
+         * @return number of picked Tiles with given Color
          */
-        public ArrayList<Tile> pickTiles(Tile color) {
-            ArrayList<Tile> picked = new ArrayList<>();
+        public int pickTiles(Tile color) {
+            hash ^= key();
+            workshopTiles -= size();
+            int picked = 0;
             for (int i = 0; i < 4; i++) {
-                if (tiles[i] != null && tiles[i].equals(color)) {
-                    picked.add(tiles[i]);
-                } else {
-                    middleField.add(tiles[i]);
+                if (tiles[i] == color) {
+                    picked++;
+                } else if (tiles[i] != null) {
+                    setMiddleCount(tiles[i].ordinal(), middleField[tiles[i].ordinal()] + 1);
                 }
                 tiles[i] = null;
             }
@@ -136,6 +282,53 @@ public class Game implements Serializable {
             return picked;
         }
 
+        /**
+         * Gets tiles stored in this Workshop packed into an int, to be restored with {@link #restore(int)}.
+         *
+         * @return ordinals of the tiles (7 for no tile), 3 bits each
+         */
+        private int state() {
+            int state = 0;
+            for (int i = 0; i < 4; i++) {
+                state |= (tiles[i] == null ? 7 : tiles[i].ordinal()) << 3 * i;
+            }
+            return state;
+        }
+
+        /**
+         * Restores tiles saved with {@link #state()} and takes tiles that were dropped from them
+         * to the middle field back.
+         *
+         * @param state packed tiles
+         * @param color colour of the tiles that were picked
+         */
+        private void restore(int state, Tile color) {
+            hash ^= key();
+            for (int i = 0; i < 4; i++) {
+                int ordinal = state >>> 3 * i & 7;
+                tiles[i] = ordinal == 7 ? null : TILES[ordinal];
+                if (tiles[i] != null && tiles[i] != color) {
+                    setMiddleCount(ordinal, middleField[ordinal] - 1);
+                }
+            }
+            workshopTiles += size();
+            hash ^= key();
+            isEmpty = tiles[0] == null;
+        }
+
+        /**
+         * Gets colours of tiles stored in this Workshop.
+         *
+         * @return bit mask with bit {@code tile.ordinal()} set for every stored colour
+         */
+        public int colors() {
+            int colors = 0;
+            for (Tile tile : tiles) {
+                if (tile != null) colors |= 1 << tile.ordinal();
+            }
+            return colors;
+        }
+
         /**
          * Getter for this.tiles.
          *
@@ -155,6 +348,19 @@ public class Game implements Serializable {
         }
     }
 
+    /**
+     * Gets tiles stored in all workshops.
+     *
+     * @return ordinals of tiles of every workshop (7 for no tile), 3 bits each, indexed by workshop's id
+     */
+    public int[] getWorkshopStates() {
+        int[] states = new int[workshops.length];
+        for (int i = 0; i < workshops.length; i++) {
+            states[i] = workshops[i].state();
+        }
+        return states;
+    }
+
     /**
      * Fills all workshops with tiles.
      */
@@ -169,42 +375,83 @@ public class Game implements Serializable {
      *
      * @param boardIndex of a boardIndex that collects the Tiles
      * @param color      Color of picked Tiles
-     * @return Picked Tiles
+     * @return number of picked Tiles
      */
-    public ArrayList<Tile> pickTilesFromMiddle(int boardIndex, Tile color) {
+    public int pickTilesFromMiddle(int boardIndex, Tile color) {
         //adding minus floor points for the first boardIndex that collects from the middle in a round
         if (isFirst) {
-            isFirst = false;
-            playerTookFirst = boardIndex;
+            setFirst(false);
+            setPlayerTookFirst(boardIndex);
             boards[boardIndex].addTileToFloor();
         }
-        ArrayList<Tile> picked = new ArrayList<>();
-        for (int i = 0; i < middleField.size(); i++) {
-            if (middleField.get(i).equals(color)) {
-                picked.add(middleField.get(i));
-                middleField.remove(i);
-                i -= 1;
-            }
-        }
+        int picked = middleField[color.ordinal()];
+        setMiddleCount(color.ordinal(), 0);
         return picked;
     }
 
+    /**
+     * Sets number of tiles of passed colour in the middle field, keeping this.hash up to date.
+     *
+     * @param color colour's ordinal
+     * @param count number of tiles
+     */
+    private void setMiddleCount(int color, int count) {
+        hash ^= Zobrist.middle(color, middleField[color]) ^ Zobrist.middle(color, count);
+        middleSize += count - middleField[color];
+        middleField[color] = count;
+    }
+
+    /**
+     * Setter for this.isFirst, keeping this.hash up to date.
+     *
+     * @param isFirst to be assigned
+     */
+    private void setFirst(boolean isFirst) {
+        if (this.isFirst != isFirst) hash ^= Zobrist.FIRST;
+        this.isFirst = isFirst;
+    }
+
+    /**
+     * Setter for this.playerTookFirst, keeping this.hash up to date.
+     *
+     * @param playerTookFirst to be assigned
+     */
+    private void setPlayerTookFirst(int playerTookFirst) {
+        hash ^= Zobrist.tookFirst(this.playerTookFirst) ^ Zobrist.tookFirst(playerTookFirst);
+        this.playerTookFirst = playerTookFirst;
+    }
+
+    /**
+     * Setter for this.currentPlayerTurn, keeping this.hash up to date.
+     *
+     * @param currentPlayerTurn to be assigned
+     */
+    private void setCurrentPlayerTurn(int currentPlayerTurn) {
+        hash ^= Zobrist.turn(this.currentPlayerTurn) ^ Zobrist.turn(currentPlayerTurn);
+        this.currentPlayerTurn = currentPlayerTurn;
+    }
+
     /**
      * Ends the round.
      */
     public void endRound() {
+        round++;
         getTilesFromRows();
         emptyFloors();
         if (isEndOfGame()) {
             endGame();
             return;
         }
-        isFirst = true;
+        setFirst(true);
         //This player will start the next round
-        currentPlayerTurn = playerTookFirst;
-        playerTookFirst = -1;
+        setCurrentPlayerTurn(playerTookFirst != -1 ? playerTookFirst : (currentPlayerTurn + 1) % playerCount());
+        setPlayerTookFirst(-1);
 
         fillWorkshops();
+        //no tiles left to play with
+        if (isRoundEnd()) {
+            endGame();
+        }
     }
 
     /**
@@ -214,20 +461,36 @@ public class Game implements Serializable {
         for (Board board : boards) {
             board.calculateFloorScore();
         }
+        updateLeader();
+    }
+
+    /**
+     * Finds the player with the highest score after scores have changed.
+     */
+    private void updateLeader() {
+        leader = 0;
+        for (int i = 1; i < boards.length; i++) {
+            if (boards[i].getScore() > boards[leader].getScore()) {
+                leader = i;
+            }
+        }
+    }
+
+    /**
+     * Counts a wall row completed on any board.
+     */
+    void rowCompleted() {
+        completedRows++;
     }
 
     /**
-     * Checks whether the game has ended i.e. if any of the players completed a row.
+     * Checks whether the game has ended i.e. if any of the players completed a row
+     * or there were no tiles left to start a new round. Takes constant time.
      *
      * @return true, if the game has ended, false otherwise
      */
     public boolean isEndOfGame() {
-        for (Board player : boards) {
-            if (player.isAnyRowCompleted()) {
-                return true;
-            }
-        }
-        return false;
+        return hasEnded || completedRows != 0;
     }
 
     /**
@@ -246,35 +509,27 @@ public class Game implements Serializable {
      * @param tile   type of Tiles (all the Tiles from a single queue are the same type)
      */
     public void addToPouch(int amount, Tile tile) {
-        for (int i = 0; i < amount; i++) {
-            pouch.returnTile(tile);
-        }
+        pouch.returnTiles(tile, amount);
     }
 
     /**
-     * Checks if round has ended i.e. both workshops and middle field are empty
+     * Checks if round has ended i.e. both workshops and middle field are empty. Takes constant time.
      *
      * @return True/False
      */
     public boolean isRoundEnd() {
-        if (!middleField.isEmpty()) {
-            return false;
-        }
-        for (Workshop w : workshops) {
-            if (!w.isEmpty()) {
-                return false;
-            }
-        }
-        return true;
+        return middleSize + workshopTiles == 0;
     }
 
     /**
      * End the game, calculates final scores of all players
      */
     public void endGame() {
+        hasEnded = true;
         for (Board player : boards) {
             player.calculateFinalScore();
         }
+        updateLeader();
     }
 
 
@@ -286,6 +541,21 @@ public class Game implements Serializable {
      * @param usernames usernames of players
      */
     public Game(int players, ArrayList<String> usernames) {
+        this(players, usernames, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Game object constructor initializes all player boards and proper number
+     * of workshops as well as pouch. All randomness of the game - the starting player
+     * and every tile drawn - is derived from passed seed, so the game can be reproduced
+     * from its seed and moves.
+     *
+     * @param players   number of players
+     * @param usernames usernames of players
+     * @param seed      seed of this game
+     */
+    public Game(int players, ArrayList<String> usernames, long seed) {
+        this.seed = seed;
         this.usernames = usernames;
         this.boards = new Board[players];
 
@@ -293,19 +563,66 @@ public class Game implements Serializable {
             boards[i] = new Board(this);
         }
 
-        this.pouch = new Pouch();
+        SplittableRandom random = new SplittableRandom(seed);
+        this.pouch = new Pouch(random.nextLong());
 
         this.workshops = new Workshop[players * 2 + 1];
         for (int i = 0; i < players * 2 + 1; i++) {
-            workshops[i] = new Workshop();
+            workshops[i] = new Workshop(i);
         }
 
-        this.middleField = new LinkedList<>();
         this.isFirst = true;
         this.playerTookFirst = -1;
-        this.currentPlayerTurn = new Random().nextInt(playerCount());
+        this.currentPlayerTurn = random.nextInt(playerCount());
 
         fillWorkshops();
+        this.hash = computeHash();
+    }
+
+    /**
+     * Copy constructor, creates a deep copy of passed game that can be played independently.
+     * The copy draws the same tiles as the original would. Usernames are shared with the original.
+     *
+     * @param other game to copy
+     */
+    public Game(Game other) {
+        this(other, null);
+    }
+
+    /**
+     * Copy constructor, creates a deep copy of passed game that can be played independently
+     * and draws tiles with passed source of randomness. Usernames are shared with the original.
+     *
+     * @param other  game to copy
+     * @param random source of randomness of the copy's pouch, or null to draw the same tiles as the original
+     */
+    public Game(Game other, RandomGenerator random) {
+        this.seed = other.seed;
+        this.usernames = other.usernames;
+        this.boards = new Board[other.boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new Board(other.boards[i], this);
+        }
+
+        this.pouch = new Pouch(other.pouch, random);
+
+        this.workshops = new Workshop[other.workshops.length];
+        for (int i = 0; i < workshops.length; i++) {
+            workshops[i] = new Workshop(other.workshops[i]);
+        }
+
+        System.arraycopy(other.middleField, 0, middleField, 0, 5);
+        this.middleSize = other.middleSize;
+        this.workshopTiles = other.workshopTiles;
+        this.completedRows = other.completedRows;
+        this.leader = other.leader;
+        this.isFirst = other.isFirst;
+        this.playerTookFirst = other.playerTookFirst;
+        this.currentPlayerTurn = other.currentPlayerTurn;
+        this.whenSaved = other.whenSaved;
+        this.hasEnded = other.hasEnded;
+        this.round = other.round;
+        this.hash = other.hash;
     }
 
     /**
@@ -316,7 +633,281 @@ public class Game implements Serializable {
             endRound();
             return;
         }
-        currentPlayerTurn = ++currentPlayerTurn % playerCount();
+        setCurrentPlayerTurn((currentPlayerTurn + 1) % playerCount());
+    }
+
+    /**
+     * Writes all legal moves of the current player into passed buffer, packed as described in {@link Move}.
+     * Does not allocate.
+     *
+     * @param moves buffer of at least {@link Move#MAX_MOVES} length
+     * @return number of moves written
+     */
+    public int legalMoves(int[] moves) {
+        Board board = boards[currentPlayerTurn];
+        int count = 0;
+        for (int source = 0; source < workshops.length; source++) {
+            count = addMoves(moves, count, board, source, workshops[source].colors());
+        }
+        int middleColors = 0;
+        for (Tile tile : TILES) {
+            if (middleField[tile.ordinal()] != 0) middleColors |= 1 << tile.ordinal();
+        }
+        return addMoves(moves, count, board, Move.MIDDLE, middleColors);
+    }
+
+    /**
+     * Writes moves taking every passed colour from a single source.
+     *
+     * @param moves  buffer to write to
+     * @param count  number of moves already in the buffer
+     * @param board  board of the moving player
+     * @param source workshop's id or {@link Move#MIDDLE}
+     * @param colors bit mask of colours available in the source
+     * @return number of moves in the buffer
+     */
+    private static int addMoves(int[] moves, int count, Board board, int source, int colors) {
+        int allowed = board.getAllowed();
+        for (Tile tile : TILES) {
+            if ((colors & (1 << tile.ordinal())) == 0) continue;
+            for (int row = 0; row < 5; row++) {
+                if ((allowed & (1 << (row * 5 + tile.ordinal()))) != 0) {
+                    moves[count++] = Move.encode(source, tile, row);
+                }
+            }
+            moves[count++] = Move.encode(source, tile, Move.FLOOR);
+        }
+        return count;
+    }
+
+    /**
+     * Counts tiles of passed colour in passed source.
+     *
+     * @param source workshop's id or {@link Move#MIDDLE}
+     * @param color  colour to count
+     * @return number of tiles of passed colour
+     */
+    public int count(int source, Tile color) {
+        if (source == Move.MIDDLE) {
+            return middleField[color.ordinal()];
+        }
+        int count = 0;
+        for (Tile tile : workshops[source].getTiles()) {
+            if (tile == color) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether passed move can be made by the current player.
+     *
+     * @param move packed move
+     * @return true, if the move is legal, false otherwise
+     */
+    public boolean isLegal(int move) {
+        // moves come from clients, so bits outside the packing and colours past the last one are rejected
+        if ((move & ~0x3FF) != 0 || (move >>> 4 & 0x7) >= TILES.length) return false;
+        int source = Move.source(move);
+        Tile color = Move.color(move);
+        int target = Move.target(move);
+
+        if (source == Move.MIDDLE) {
+            if (middleField[color.ordinal()] == 0) return false;
+        } else if (source >= workshops.length || (workshops[source].colors() & (1 << color.ordinal())) == 0) {
+            return false;
+        }
+        return target == Move.FLOOR || (target < 5 && boards[currentPlayerTurn].accepts(target, color));
+    }
+
+    /**
+     * Makes passed move on behalf of the current player and initiates next turn.
+     *
+     * @param move packed move
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    public void apply(int move) {
+        if (!isLegal(move)) {
+            throw new IllegalArgumentException("Illegal move: " + new Move(move));
+        }
+        play(move);
+    }
+
+    /**
+     * Makes passed move like {@link #apply(int)}, but fills the workshops with passed tiles if the move ends
+     * the round, instead of drawing them. Players follow the server's game this way, as its seed stays there.
+     *
+     * @param move  packed move
+     * @param tiles states of the workshops after the move, as given by {@link #getWorkshopStates()},
+     *              null if the move does not end the round
+     * @throws IllegalArgumentException if the move is not legal, or passed tiles are not in the pouch
+     */
+    public void apply(int move, int[] tiles) {
+        if (tiles != null && tiles.length != workshops.length) {
+            throw new IllegalArgumentException("Tiles of " + tiles.length + " workshops, expected " + workshops.length);
+        }
+        dealt = tiles;
+        try {
+            apply(move);
+        } finally {
+            dealt = null;
+        }
+    }
+
+    /**
+     * Makes passed legal move on behalf of the current player and initiates next turn.
+     *
+     * @param move packed legal move
+     */
+    private void play(int move) {
+        int source = Move.source(move);
+        Tile color = Move.color(move);
+        int target = Move.target(move);
+        Board board = boards[currentPlayerTurn];
+
+        int picked = source == Move.MIDDLE
+                ? pickTilesFromMiddle(currentPlayerTurn, color)
+                : workshops[source].pickTiles(color);
+        board.addTilesToFloor(target == Move.FLOOR ? picked : board.addTilesToQueue(target, color, picked));
+        nextTurn();
+    }
+
+    /**
+     * Checks whether passed move takes the last tiles of the round.
+     *
+     * @param move packed move
+     * @return true, if the round ends after the move, false otherwise
+     */
+    public boolean endsRound(int move) {
+        int source = Move.source(move);
+        Tile color = Move.color(move);
+        if (source == Move.MIDDLE) {
+            return middleSize + workshopTiles == middleField[color.ordinal()];
+        }
+        return workshops[source].colors() == 1 << color.ordinal()
+                && middleSize + workshopTiles == workshops[source].size();
+    }
+
+    /**
+     * Makes passed move like {@link #apply(int)} and records how to unmake it.
+     * A move within a round is recorded as a single long, a move ending the round
+     * as a copy of this game made before the move.
+     *
+     * @param move packed move
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    public void make(int move) {
+        if (!isLegal(move)) {
+            throw new IllegalArgumentException("Illegal move: " + new Move(move));
+        }
+        int source = Move.source(move);
+        int target = Move.target(move);
+        Board board = boards[currentPlayerTurn];
+
+        long record;
+        if (endsRound(move)) {
+            if (roundSnapshots == null) roundSnapshots = new ArrayList<>();
+            roundSnapshots.add(new Game(this));
+            record = Long.MIN_VALUE | move;
+        } else {
+            // move | workshop's tiles | middle count | isFirst | playerTookFirst | queue | floor | player
+            record = move
+                    | (long) (source == Move.MIDDLE ? 0 : workshops[source].state()) << 10
+                    | (long) (source == Move.MIDDLE ? middleField[Move.color(move).ordinal()] : 0) << 22
+                    | (isFirst ? 1L : 0L) << 28
+                    | (long) (playerTookFirst + 1) << 29
+                    | (long) (target == Move.FLOOR ? 0 : board.queueState(target)) << 32
+                    | (long) board.getFloor() << 38
+                    | (long) currentPlayerTurn << 46;
+        }
+        if (undoRecords == null) {
+            undoRecords = new long[64];
+        } else if (undoSize == undoRecords.length) {
+            undoRecords = Arrays.copyOf(undoRecords, undoSize * 2);
+        }
+        undoRecords[undoSize++] = record;
+        play(move);
+    }
+
+    /**
+     * Reverts the last move made with {@link #make(int)}.
+     *
+     * @throws IllegalStateException if there is no move to unmake
+     */
+    public void unmake() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("No move to unmake");
+        }
+        long record = undoRecords[--undoSize];
+        if (record < 0) {
+            restore(roundSnapshots.remove(roundSnapshots.size() - 1));
+            return;
+        }
+        int move = (int) record & 0x3FF;
+        int source = Move.source(move);
+        Tile color = Move.color(move);
+        int target = Move.target(move);
+        int player = (int) (record >>> 46) & 3;
+
+        setCurrentPlayerTurn(player);
+        Board board = boards[player];
+        board.restoreFloor((int) (record >>> 38) & 0xFF);
+        if (target != Move.FLOOR) {
+            board.restoreQueue(target, (int) (record >>> 32) & 0x3F);
+        }
+        if (source == Move.MIDDLE) {
+            setMiddleCount(color.ordinal(), (int) (record >>> 22) & 0x3F);
+            setFirst((record >>> 28 & 1) != 0);
+            setPlayerTookFirst((int) (record >>> 29 & 7) - 1);
+        } else {
+            workshops[source].restore((int) (record >>> 10) & 0xFFF, color);
+        }
+    }
+
+    /**
+     * Gets the number of moves that can be unmade.
+     *
+     * @return number of moves made with {@link #make(int)} and not unmade yet
+     */
+    public int undoSize() {
+        return undoSize;
+    }
+
+    /**
+     * Restores state of this game from its earlier copy, keeping identities of its boards,
+     * workshops and pouch, which may be referenced from elsewhere.
+     *
+     * @param other copy of this game to restore
+     */
+    private void restore(Game other) {
+        for (int i = 0; i < boards.length; i++) {
+            boards[i].restore(other.boards[i]);
+        }
+        pouch.restore(other.pouch);
+        for (int i = 0; i < workshops.length; i++) {
+            System.arraycopy(other.workshops[i].tiles, 0, workshops[i].tiles, 0, 4);
+            workshops[i].isEmpty = other.workshops[i].isEmpty;
+        }
+        System.arraycopy(other.middleField, 0, middleField, 0, 5);
+        this.middleSize = other.middleSize;
+        this.workshopTiles = other.workshopTiles;
+        this.completedRows = other.completedRows;
+        this.leader = other.leader;
+        this.isFirst = other.isFirst;
+        this.playerTookFirst = other.playerTookFirst;
+        this.currentPlayerTurn = other.currentPlayerTurn;
+        this.hasEnded = other.hasEnded;
+        this.round = other.round;
+        this.hash = other.hash;
+    }
+
+    /**
+     * Makes passed move on behalf of the current player and initiates next turn.
+     *
+     * @param move move to make
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    public void apply(Move move) {
+        apply(move.getCode());
     }
 
     /**
@@ -338,12 +929,22 @@ public class Game implements Serializable {
     }
 
     /**
-     * Getter for this.middleField.
+     * Counts tiles of passed colour in the middle field.
+     *
+     * @param color colour to count
+     * @return number of tiles of passed colour in the middle field
+     */
+    public int getMiddleCount(Tile color) {
+        return middleField[color.ordinal()];
+    }
+
+    /**
+     * Getter for this.middleSize.
      *
-     * @return this.middleField
+     * @return number of all tiles in the middle field
      */
-    public LinkedList<Tile> getMiddleField() {
-        return middleField;
+    public int getMiddleSize() {
+        return middleSize;
     }
 
     /**
@@ -365,20 +966,247 @@ public class Game implements Serializable {
     }
 
     /**
-     * Finds and returns board id of the winner
+     * Returns board id of the winner, or of the current leader if the game has not ended yet.
+     * Takes constant time.
      *
      * @return int id of board of the winner
      */
     public int getWinner() {
-        int highestScore = 0;
-        int winner = 0;
-        for (int i = 0; i < playerCount(); i++) {
-            if (boards[i].getScore() > highestScore) {
-                highestScore = boards[i].getScore();
-                winner = i;
+        return leader;
+    }
+
+    /**
+     * Writes this game's state in a fixed-size binary form of {@link #ENCODED_SIZE} bytes:
+     * <ul>
+     *     <li>number of players, current player, finished rounds and the first player marker
+     *     (bit 3 set if it is in the middle, bits 0-2 hold the id of the player who took it + 1), a byte each,</li>
+     *     <li>four boards, absent ones zeroed, of 12 bytes each: the wall bitboard as an int, the score as a short,
+     *     the floor as a byte and five pattern rows as bytes (colour's ordinal, 7 if empty, in bits 3-5
+     *     and number of tiles in bits 0-2),</li>
+     *     <li>nine workshops, absent ones zeroed, as shorts of four 3-bit tile ordinals, 7 for no tile,</li>
+     *     <li>numbers of tiles of every colour in the middle field, a byte each, followed by a zero byte.</li>
+     * </ul>
+     * Usernames and the pouch are not written.
+     *
+     * @param buffer buffer to write to, at its position
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) playerCount());
+        buffer.put((byte) currentPlayerTurn);
+        buffer.put((byte) round);
+        buffer.put((byte) ((isFirst ? 8 : 0) | (playerTookFirst + 1)));
+        for (int i = 0; i < 4; i++) {
+            if (i < boards.length) {
+                Board board = boards[i];
+                buffer.putInt(board.getWall());
+                buffer.putShort((short) board.getScore());
+                buffer.put((byte) board.getFloor());
+                for (int row = 0; row < 5; row++) {
+                    buffer.put((byte) board.queueState(row));
+                }
+            } else {
+                buffer.putLong(0).putInt(0);
+            }
+        }
+        for (int i = 0; i < 9; i++) {
+            buffer.putShort((short) (i < workshops.length ? workshops[i].state() : 0));
+        }
+        for (int color = 0; color < 5; color++) {
+            buffer.put((byte) middleField[color]);
+        }
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * Writes this game's full state in a compact binary form, to be read with {@link #read(DataInput)}:
+     * <ul>
+     *     <li>number of players, current player, finished rounds and flags (bits 0-2 hold the id of the player
+     *     who took the first player marker + 1, bit 3 is set if the marker is in the middle, bit 4 if final
+     *     scores were calculated), a byte each, and a zero long in place of the seed, which is not sent,</li>
+     *     <li>every board, 11 bytes each, see {@link Board#write(DataOutput)},</li>
+     *     <li>every workshop as a short of four 3-bit tile ordinals, 7 for no tile,</li>
+     *     <li>numbers of tiles of every colour in the middle field, a byte each, and the pouch,
+     *     see {@link Pouch#write(DataOutput)},</li>
+     *     <li>number of usernames as a byte, 255 if there are none, followed by the usernames, and the time
+     *     this game was saved, preceded by a boolean telling whether it was, as modified UTF-8 strings.</li>
+     * </ul>
+     * Hashes and other derived state are not written. A 4-player game takes about 130 bytes.
+     *
+     * @param out output to write to
+     * @throws IOException when I/O error occurs
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(playerCount());
+        out.writeByte(currentPlayerTurn);
+        out.writeByte(round);
+        out.writeByte((hasEnded ? 16 : 0) | (isFirst ? 8 : 0) | (playerTookFirst + 1));
+        out.writeLong(0);
+        for (Board board : boards) {
+            board.write(out);
+        }
+        for (Workshop workshop : workshops) {
+            out.writeShort(workshop.state());
+        }
+        for (int color = 0; color < 5; color++) {
+            out.writeByte(middleField[color]);
+        }
+        pouch.write(out);
+        if (usernames == null) {
+            out.writeByte(255);
+        } else {
+            out.writeByte(usernames.size());
+            for (String username : usernames) {
+                out.writeUTF(username);
+            }
+        }
+        out.writeBoolean(whenSaved != null);
+        if (whenSaved != null) {
+            out.writeUTF(whenSaved);
+        }
+    }
+
+    /**
+     * Reads a game written with {@link #write(DataOutput)}.
+     *
+     * @param in input to read from
+     * @return read game
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the state is not valid
+     */
+    public static Game read(DataInput in) throws IOException {
+        return new Game(in);
+    }
+
+    /**
+     * Constructor reading a game written with {@link #write(DataOutput)}, deriving the rest of its state.
+     *
+     * @param in input to read from
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the state is not valid
+     */
+    private Game(DataInput in) throws IOException {
+        int players = in.readUnsignedByte();
+        if (players < 2 || players > 4) {
+            throw new IllegalArgumentException("Invalid number of players " + players);
+        }
+        this.currentPlayerTurn = in.readUnsignedByte();
+        this.round = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        this.hasEnded = (flags & 16) != 0;
+        this.isFirst = (flags & 8) != 0;
+        this.playerTookFirst = (flags & 7) - 1;
+        if (currentPlayerTurn >= players || playerTookFirst >= players) {
+            throw new IllegalArgumentException("Invalid player");
+        }
+        in.readLong(); // no seed
+        this.seed = new SplittableRandom().nextLong();
+
+        this.boards = new Board[players];
+        for (int i = 0; i < players; i++) {
+            boards[i] = new Board(this);
+            boards[i].read(in);
+            completedRows += boards[i].getCompletedRows();
+        }
+
+        this.workshops = new Workshop[players * 2 + 1];
+        for (int i = 0; i < workshops.length; i++) {
+            Workshop workshop = workshops[i] = new Workshop(i);
+            int state = in.readUnsignedShort();
+            for (int j = 0; j < 4; j++) {
+                int ordinal = state >>> 3 * j & 7;
+                if (ordinal >= 5 && ordinal != 7) {
+                    throw new IllegalArgumentException("Invalid workshop " + i);
+                }
+                workshop.tiles[j] = ordinal == 7 ? null : TILES[ordinal];
             }
+            workshop.isEmpty = workshop.tiles[0] == null;
+            workshopTiles += workshop.size();
+        }
+
+        for (int color = 0; color < 5; color++) {
+            middleField[color] = in.readUnsignedByte();
+            middleSize += middleField[color];
+        }
+        this.pouch = new Pouch(new SplittableRandom(seed).nextLong()); // as seeded by the constructor
+        pouch.read(in);
+
+        int names = in.readUnsignedByte();
+        if (names == 255) {
+            this.usernames = null;
+        } else {
+            this.usernames = new ArrayList<>(names);
+            for (int i = 0; i < names; i++) {
+                usernames.add(in.readUTF());
+            }
+        }
+        this.whenSaved = in.readBoolean() ? in.readUTF() : null;
+
+        updateLeader();
+        this.hash = computeHash();
+    }
+
+    /**
+     * Reads this game's serialized fields and gives it a new seed, as the seed is not serialized.
+     *
+     * @param in stream to read from
+     * @throws IOException            when I/O error occurs
+     * @throws ClassNotFoundException if a class of a field can not be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        seed = new SplittableRandom().nextLong();
+        pouch.reseed(new SplittableRandom(seed).nextLong()); // as seeded by the constructor
+    }
+
+    /**
+     * Gets 64-bit Zobrist hash of this game's state: walls, pattern rows, floors and scores of all boards,
+     * workshops, the middle field, the first player marker and the current turn.
+     * The hash is kept up to date as the game changes, so this takes constant time.
+     *
+     * @return hash of this game's state
+     */
+    public long getHash() {
+        long hash = this.hash;
+        for (int i = 0; i < boards.length; i++) {
+            // rotating by seat tells apart equal boards of different players
+            hash ^= Long.rotateLeft(boards[i].getHash(), 16 * i);
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates Zobrist hash of this game's state, not including the boards, from scratch.
+     *
+     * @return hash of this game's state
+     */
+    private long computeHash() {
+        long hash = Zobrist.turn(currentPlayerTurn) ^ Zobrist.tookFirst(playerTookFirst);
+        if (isFirst) hash ^= Zobrist.FIRST;
+        for (Workshop workshop : workshops) {
+            hash ^= workshop.key();
+        }
+        for (int color = 0; color < 5; color++) {
+            hash ^= Zobrist.middle(color, middleField[color]);
         }
-        return winner;
+        return hash;
+    }
+
+    /**
+     * Getter for this.seed.
+     *
+     * @return seed from which all randomness of this game is derived
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Getter for this.round.
+     *
+     * @return number of rounds finished in this game
+     */
+    public int getRound() {
+        return round;
     }
 
     /**
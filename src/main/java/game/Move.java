@@ -0,0 +1,162 @@
+package game;
+
+import java.io.Serializable;
+
+/**
+ * This class represents a single move of Azul: taking all tiles of one colour
+ * from a source (a workshop or the middle field) and putting them in a target
+ * (one of the pattern rows or the floor).
+ * <p>
+ * A move is packed into an int, so that engine code can pass moves around without
+ * allocating - see {@link #encode(int, Tile, int)}. Instances of this class only wrap
+ * such an int.
+ */
+public final class Move implements Serializable {
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = -5387356845901248636L;
+
+    /**
+     * Source index representing the middle field.
+     */
+    public static final int MIDDLE = 15;
+
+    /**
+     * Target index representing the floor.
+     */
+    public static final int FLOOR = 5;
+
+    /**
+     * Upper bound of legal moves in any position: 9 workshops and the middle field,
+     * 5 colours, 5 pattern rows and the floor.
+     */
+    public static final int MAX_MOVES = 10 * 5 * 6;
+
+    /**
+     * All tiles, indexed by their ordinal.
+     */
+    private static final Tile[] TILES = Tile.values();
+
+    /**
+     * This move packed into an int.
+     */
+    private final int code;
+
+    /**
+     * Constructor for this.
+     *
+     * @param code move packed with {@link #encode(int, Tile, int)}
+     */
+    public Move(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Constructor for this.
+     *
+     * @param source workshop's id or {@link #MIDDLE}
+     * @param color  colour of taken tiles
+     * @param target pattern row's id or {@link #FLOOR}
+     */
+    public Move(int source, Tile color, int target) {
+        this(encode(source, color, target));
+    }
+
+    /**
+     * Packs a move into an int.
+     * Bits 0-3 hold the source, bits 4-6 the colour and bits 7-9 the target.
+     *
+     * @param source workshop's id or {@link #MIDDLE}
+     * @param color  colour of taken tiles
+     * @param target pattern row's id or {@link #FLOOR}
+     * @return packed move
+     */
+    public static int encode(int source, Tile color, int target) {
+        return source | color.ordinal() << 4 | target << 7;
+    }
+
+    /**
+     * Gets source of a packed move.
+     *
+     * @param move packed move
+     * @return workshop's id or {@link #MIDDLE}
+     */
+    public static int source(int move) {
+        return move & 0xF;
+    }
+
+    /**
+     * Gets colour of a packed move.
+     *
+     * @param move packed move
+     * @return colour of taken tiles
+     */
+    public static Tile color(int move) {
+        return TILES[move >>> 4 & 0x7];
+    }
+
+    /**
+     * Gets target of a packed move.
+     *
+     * @param move packed move
+     * @return pattern row's id or {@link #FLOOR}
+     */
+    public static int target(int move) {
+        return move >>> 7 & 0x7;
+    }
+
+    /**
+     * Getter for this.code.
+     *
+     * @return this.code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Gets source of this move.
+     *
+     * @return workshop's id or {@link #MIDDLE}
+     */
+    public int getSource() {
+        return source(code);
+    }
+
+    /**
+     * Gets colour of this move.
+     *
+     * @return colour of taken tiles
+     */
+    public Tile getColor() {
+        return color(code);
+    }
+
+    /**
+     * Gets target of this move.
+     *
+     * @return pattern row's id or {@link #FLOOR}
+     */
+    public int getTarget() {
+        return target(code);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Move && ((Move) o).code == code;
+    }
+
+    @Override
+    public int hashCode() {
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return "Move{" +
+                "source=" + (getSource() == MIDDLE ? "MIDDLE" : getSource()) +
+                ", color=" + getColor() +
+                ", target=" + (getTarget() == FLOOR ? "FLOOR" : getTarget()) + "}";
+    }
+}
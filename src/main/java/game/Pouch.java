@@ -1,60 +1,245 @@
 package game;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.Stack;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * This class represents an Azul Pouch of Tiles.
+ * Tiles are kept as counts of every colour, so that drawing a tile takes constant time.
  */
 public class Pouch implements Serializable {
     /**
-     * Tiles stored in this pouch.
+     * Version of the serialized form, pinned as pouches are stored within games.
      */
-    private final Stack<Tile> tiles = new Stack<>();
+    private static final long serialVersionUID = -9113505624019292051L;
 
     /**
-     * Tiles that are to return to this pouch.
+     * All tiles, indexed by their ordinal.
      */
-    private final Stack<Tile> returnedTiles = new Stack<>();
+    private static final Tile[] TILES = Tile.values();
 
     /**
-     * Constructor for this.
+     * Odd constant spreading seeds of consecutive draws.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Number of tiles of every colour stored in this pouch, indexed by Tile's ordinal.
+     */
+    private final int[] tiles = new int[5];
+
+    /**
+     * Number of all tiles stored in this pouch.
+     */
+    private int size;
+
+    /**
+     * Number of tiles of every colour that are to return to this pouch, indexed by Tile's ordinal.
+     */
+    private final int[] returnedTiles = new int[5];
+
+    /**
+     * Number of all tiles that are to return to this pouch.
+     */
+    private int returnedSize;
+
+    /**
+     * Seed of draws made without an injected source of randomness. Not serialized, see {@link Game}.
+     */
+    private transient long seed;
+
+    /**
+     * Number of draws made so far.
+     */
+    private long draws;
+
+    /**
+     * Injected source of randomness of draws, null if draws are derived from this.seed.
+     */
+    private transient RandomGenerator random;
+
+    /**
+     * Constructor for this, seeded randomly.
      */
     public Pouch() {
-        for (int i = 0; i < 20; i++) {
-            tiles.push(Tile.BLACK);
-            tiles.push(Tile.RED);
-            tiles.push(Tile.YELLOW);
-            tiles.push(Tile.GREEN);
-            tiles.push(Tile.BLUE);
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor for this. Every draw is derived from passed seed and the number of draws made before,
+     * so the same seed always produces the same sequence of tiles, also after this pouch is copied or serialized.
+     *
+     * @param seed seed of draws
+     */
+    public Pouch(long seed) {
+        for (int i = 0; i < 5; i++) {
+            tiles[i] = 20;
         }
+        size = 100;
+        this.seed = seed;
+    }
+
+    /**
+     * Constructor for this.
+     *
+     * @param random source of randomness of draws
+     */
+    public Pouch(RandomGenerator random) {
+        this(random.nextLong());
+        this.random = random;
+    }
+
+    /**
+     * Copy constructor for this.
+     *
+     * @param other  pouch to copy
+     * @param random source of randomness of the copy's draws,
+     *               or null to continue other's sequence of draws
+     */
+    public Pouch(Pouch other, RandomGenerator random) {
+        System.arraycopy(other.tiles, 0, tiles, 0, 5);
+        System.arraycopy(other.returnedTiles, 0, returnedTiles, 0, 5);
+        this.size = other.size;
+        this.returnedSize = other.returnedSize;
+        this.seed = other.seed;
+        this.draws = other.draws;
+        this.random = random;
     }
 
     /**
-     * Used for drawing a single tile from a shuffled bag
+     * Replaces the seed of following draws.
+     *
+     * @param seed new seed of draws
+     */
+    void reseed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Restores state of this pouch from its earlier copy, keeping this pouch's source of randomness.
+     *
+     * @param other copy of this pouch to restore
+     */
+    void restore(Pouch other) {
+        System.arraycopy(other.tiles, 0, tiles, 0, 5);
+        System.arraycopy(other.returnedTiles, 0, returnedTiles, 0, 5);
+        this.size = other.size;
+        this.returnedSize = other.returnedSize;
+        this.draws = other.draws;
+    }
+
+    /**
+     * Writes numbers of tiles of every colour stored in and returned to this pouch, a byte each,
+     * and the number of draws as an int, to be read with {@link #read(DataInput)}.
+     *
+     * @param out output to write to
+     * @throws IOException when I/O error occurs
+     */
+    void write(DataOutput out) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            out.writeByte(tiles[i]);
+        }
+        for (int i = 0; i < 5; i++) {
+            out.writeByte(returnedTiles[i]);
+        }
+        out.writeInt((int) draws);
+    }
+
+    /**
+     * Reads contents of this new pouch written with {@link #write(DataOutput)}.
+     *
+     * @param in input to read from
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if there are more than 20 tiles of a colour
+     */
+    void read(DataInput in) throws IOException {
+        size = 0;
+        returnedSize = 0;
+        for (int i = 0; i < 5; i++) {
+            size += tiles[i] = in.readUnsignedByte();
+        }
+        for (int i = 0; i < 5; i++) {
+            returnedSize += returnedTiles[i] = in.readUnsignedByte();
+            if (tiles[i] + returnedTiles[i] > 20) {
+                throw new IllegalArgumentException("Too many " + TILES[i] + " tiles in the pouch");
+            }
+        }
+        draws = in.readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Used for drawing a single random tile from the bag
      *
      * @return a single tile
      */
     public Tile getTile() {
-        Collections.shuffle(tiles);
-        if (tiles.isEmpty()) {
+        if (size == 0) {
             refill();
         }
         //If tile is still empty after refill
-        if (tiles.isEmpty()) {
+        if (size == 0) {
+            return null;
+        }
+        int drawn = random != null ? random.nextInt(size) : (int) ((mix(seed + draws * GOLDEN_GAMMA) >>> 32) * size >>> 32);
+        draws++;
+        int color = 0;
+        while (drawn >= tiles[color]) {
+            drawn -= tiles[color++];
+        }
+        tiles[color]--;
+        size--;
+        return TILES[color];
+    }
+
+    /**
+     * Draws passed tile instead of a random one, refilling this pouch the same way {@link #getTile()} does.
+     *
+     * @param ordinal ordinal of the tile to draw, 7 for none, which is drawn only from an empty pouch
+     * @return the drawn tile, null for none
+     * @throws IllegalArgumentException if the tile is not in this pouch
+     */
+    Tile take(int ordinal) {
+        if (size == 0) {
+            refill();
+        }
+        if (ordinal == 7 && size == 0) {
             return null;
         }
-        return tiles.pop();
+        if (ordinal >= 5 || tiles[ordinal] == 0) {
+            throw new IllegalArgumentException("Tile " + ordinal + " is not in the pouch");
+        }
+        draws++;
+        tiles[ordinal]--;
+        size--;
+        return TILES[ordinal];
+    }
+
+    /**
+     * Scrambles bits of passed value (finalizer of MurmurHash3).
+     *
+     * @param z value to scramble
+     * @return scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
     }
 
     /**
      * Refills this pouch with all returned tiles.
      */
     private void refill() {
-        while (!returnedTiles.isEmpty()) {
-            tiles.push(returnedTiles.pop());
+        for (int i = 0; i < 5; i++) {
+            tiles[i] += returnedTiles[i];
+            returnedTiles[i] = 0;
         }
+        size += returnedSize;
+        returnedSize = 0;
     }
 
 
@@ -64,7 +249,54 @@ public class Pouch implements Serializable {
      * @param tile to add
      */
     public void returnTile(Tile tile) {
-        this.returnedTiles.push(tile);
+        returnTiles(tile, 1);
+    }
+
+    /**
+     * Adds passed amount of returned tiles of a single colour to this.returnedTiles.
+     *
+     * @param tile   colour of the tiles
+     * @param amount amount of tiles to add
+     */
+    public void returnTiles(Tile tile, int amount) {
+        returnedTiles[tile.ordinal()] += amount;
+        returnedSize += amount;
+    }
+
+    /**
+     * Counts tiles of passed colour stored in this pouch.
+     *
+     * @param tile colour to count
+     * @return number of stored tiles of passed colour
+     */
+    public int count(Tile tile) {
+        return tiles[tile.ordinal()];
+    }
+
+    /**
+     * Getter for this.draws.
+     *
+     * @return number of draws made so far
+     */
+    public long getDraws() {
+        return draws;
     }
 
+    /**
+     * Getter for this.size.
+     *
+     * @return number of all tiles stored in this pouch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for this.returnedSize.
+     *
+     * @return number of all tiles that are to return to this pouch
+     */
+    public int returnedSize() {
+        return returnedSize;
+    }
 }
@@ -0,0 +1,171 @@
+package game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class represents a whole game as its seed and the list of moves made,
+ * which is enough to reproduce every state of the game.
+ */
+public class Replay implements Serializable {
+    /**
+     * Version of the serialized form, pinned so that stored replays stay readable.
+     */
+    private static final long serialVersionUID = -4751614551060677236L;
+
+    /**
+     * Seed of the recorded game.
+     */
+    private final long seed;
+
+    /**
+     * Number of players of the recorded game.
+     */
+    private final int players;
+
+    /**
+     * Moves made in the recorded game, packed as described in {@link Move}.
+     */
+    private short[] moves;
+
+    /**
+     * Number of recorded moves.
+     */
+    private int size;
+
+    /**
+     * Constructor for this.
+     *
+     * @param seed    seed of the recorded game
+     * @param players number of players of the recorded game
+     */
+    public Replay(long seed, int players) {
+        this.seed = seed;
+        this.players = players;
+        this.moves = new short[128];
+    }
+
+    /**
+     * Creates an empty replay of passed game, which must not have any moves made yet.
+     *
+     * @param game game to record
+     * @return replay to add the game's moves to
+     */
+    public static Replay of(Game game) {
+        return new Replay(game.getSeed(), game.playerCount());
+    }
+
+    /**
+     * Records a move.
+     *
+     * @param move move packed as described in {@link Move}
+     */
+    public void add(int move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = (short) move;
+    }
+
+    /**
+     * Reproduces the recorded game after passed number of moves.
+     *
+     * @param usernames usernames of the players
+     * @param moveCount number of moves to make
+     * @return the game after moveCount moves
+     */
+    public Game play(ArrayList<String> usernames, int moveCount) {
+        Game game = new Game(players, usernames, seed);
+        for (int i = 0; i < moveCount; i++) {
+            game.apply(moves[i]);
+        }
+        return game;
+    }
+
+    /**
+     * Reproduces the recorded game after all recorded moves.
+     *
+     * @param usernames usernames of the players
+     * @return the game after all recorded moves
+     */
+    public Game play(ArrayList<String> usernames) {
+        return play(usernames, size);
+    }
+
+    /**
+     * Gets a recorded move.
+     *
+     * @param index index of the move
+     * @return move packed as described in {@link Move}
+     */
+    public int getMove(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return moves[index];
+    }
+
+    /**
+     * Getter for this.size.
+     *
+     * @return number of recorded moves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for this.seed.
+     *
+     * @return seed of the recorded game
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Encodes this replay: seed, number of players, number of moves and the moves, two bytes each.
+     *
+     * @return encoded replay
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(11 + size * 2);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(seed);
+            out.writeByte(players);
+            out.writeShort(size);
+            for (int i = 0; i < size; i++) {
+                out.writeShort(moves[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a replay encoded with {@link #toBytes()}.
+     *
+     * @param data encoded replay
+     * @return decoded replay
+     * @throws IllegalArgumentException if data is not a valid replay
+     */
+    public static Replay fromBytes(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            Replay replay = new Replay(in.readLong(), in.readUnsignedByte());
+            int size = in.readUnsignedShort();
+            for (int i = 0; i < size; i++) {
+                replay.add(in.readShort());
+            }
+            return replay;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid replay", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class holds random keys of Zobrist hashing of game states.
+ * Every part of a state has its own key and a state's hash is the XOR of keys of all its parts,
+ * so changing a single part updates the hash with one or two XORs.
+ * Keys of empty parts (empty queue, no tiles, score 0, ...) are 0.
+ */
+final class Zobrist {
+    /**
+     * Keys of wall spots, indexed by bit index of the spot.
+     */
+    static final long[] WALL = new long[25];
+
+    /**
+     * Keys of pattern rows, indexed by {@code (row * 5 + colour) * 6 + count}.
+     */
+    private static final long[] QUEUE = new long[5 * 5 * 6];
+
+    /**
+     * Keys of floors, indexed by number of tiles on the floor.
+     */
+    private static final long[] FLOOR = new long[64];
+
+    /**
+     * Keys of scores.
+     */
+    private static final long[] SCORE = new long[256];
+
+    /**
+     * Keys of workshops, indexed by {@code (workshop * 5 + colour) * 5 + count}.
+     */
+    private static final long[] WORKSHOP = new long[9 * 5 * 5];
+
+    /**
+     * Keys of the middle field, indexed by {@code colour * 64 + count}.
+     */
+    private static final long[] MIDDLE = new long[5 * 64];
+
+    /**
+     * Keys of the player who took the first player marker, indexed by player's id + 1.
+     */
+    private static final long[] TOOK_FIRST = new long[5];
+
+    /**
+     * Keys of the player whose turn it is.
+     */
+    private static final long[] TURN = new long[4];
+
+    /**
+     * Key of the first player marker lying in the middle field.
+     */
+    static final long FIRST;
+
+    static {
+        // fixed seed, so that hashes are the same in every JVM
+        SplittableRandom random = new SplittableRandom(0x5A0B_1A57L);
+        fill(WALL, random);
+        fill(QUEUE, random);
+        fill(FLOOR, random);
+        fill(SCORE, random);
+        fill(WORKSHOP, random);
+        fill(MIDDLE, random);
+        fill(TOOK_FIRST, random);
+        fill(TURN, random);
+        FIRST = random.nextLong();
+
+        FLOOR[0] = 0;
+        SCORE[0] = 0;
+        for (int row = 0; row < 5; row++) {
+            for (int color = 0; color < 5; color++) {
+                QUEUE[(row * 5 + color) * 6] = 0;
+            }
+        }
+        for (int color = 0; color < 5; color++) {
+            MIDDLE[color * 64] = 0;
+            for (int workshop = 0; workshop < 9; workshop++) {
+                WORKSHOP[(workshop * 5 + color) * 5] = 0;
+            }
+        }
+    }
+
+    /**
+     * Fills passed array with random keys.
+     *
+     * @param keys   array to fill
+     * @param random source of keys
+     */
+    private static void fill(long[] keys, SplittableRandom random) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Gets key of a pattern row.
+     *
+     * @param row   row's id
+     * @param color colour of the row's tiles, may be null if count is 0
+     * @param count number of tiles in the row
+     * @return key of the row
+     */
+    static long queue(int row, Tile color, int count) {
+        return count == 0 ? 0 : QUEUE[(row * 5 + color.ordinal()) * 6 + count];
+    }
+
+    /**
+     * Gets key of a floor.
+     *
+     * @param floor number of tiles on the floor
+     * @return key of the floor
+     */
+    static long floor(int floor) {
+        return FLOOR[Math.min(floor, FLOOR.length - 1)];
+    }
+
+    /**
+     * Gets key of a score.
+     *
+     * @param score score
+     * @return key of the score
+     */
+    static long score(int score) {
+        return SCORE[Math.min(score, SCORE.length - 1)];
+    }
+
+    /**
+     * Gets key of tiles of one colour in a workshop.
+     *
+     * @param workshop workshop's id
+     * @param color    colour's ordinal
+     * @param count    number of tiles of the colour
+     * @return key of the tiles
+     */
+    static long workshop(int workshop, int color, int count) {
+        return WORKSHOP[(workshop * 5 + color) * 5 + count];
+    }
+
+    /**
+     * Gets key of tiles of one colour in the middle field.
+     *
+     * @param color colour's ordinal
+     * @param count number of tiles of the colour
+     * @return key of the tiles
+     */
+    static long middle(int color, int count) {
+        return MIDDLE[color * 64 + Math.min(count, 63)];
+    }
+
+    /**
+     * Gets key of the player who took the first player marker.
+     *
+     * @param player player's id, -1 if nobody took it
+     * @return key of the player
+     */
+    static long tookFirst(int player) {
+        return TOOK_FIRST[player + 1];
+    }
+
+    /**
+     * Gets key of the player whose turn it is.
+     *
+     * @param player player's id
+     * @return key of the player
+     */
+    static long turn(int player) {
+        return TURN[player];
+    }
+}
@@ -0,0 +1,83 @@
+package game.legacy;
+
+import game.Tile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This class reads a board serialized by the first version of the game, see {@link Game}.
+ */
+final class Board implements Serializable {
+    /**
+     * Serial version of the first version of game.Board.
+     */
+    private static final long serialVersionUID = 6084173530521965795L;
+
+    /**
+     * Score of the board's owner.
+     */
+    private int score;
+
+    /**
+     * Indicating which places of the wall hold a tile, by row and column.
+     */
+    private boolean[][] placedTiles;
+
+    /**
+     * Number of tiles on the floor.
+     */
+    private int floor;
+
+    /**
+     * Pattern rows of the board.
+     */
+    private TileQueue[] tileQueues;
+
+    /**
+     * Pattern row of a board of the first version.
+     */
+    static final class TileQueue implements Serializable {
+        /**
+         * Serial version of the first version of game.Board.TileQueue.
+         */
+        private static final long serialVersionUID = -1756580555951020551L;
+
+        /**
+         * Colour of tiles in this queue, null if empty.
+         */
+        private Tile color;
+
+        /**
+         * Number of tiles in this queue.
+         */
+        private int counter;
+    }
+
+    /**
+     * Writes this board as game.Board writes its state: the wall as bits of cells by row and column,
+     * the score, the floor and every queue's colour and count, 6 bits each.
+     *
+     * @param out output to write to
+     * @throws IOException when I/O error occurs
+     */
+    void write(DataOutput out) throws IOException {
+        int wall = 0;
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column < 5; column++) {
+                if (placedTiles[row][column]) wall |= 1 << row * 5 + column;
+            }
+        }
+        int queues = 0;
+        for (int row = 0; row < 5; row++) {
+            TileQueue queue = tileQueues[row];
+            int state = (queue.counter == 0 ? 7 : queue.color.ordinal()) << 3 | queue.counter;
+            queues |= state << 6 * row;
+        }
+        out.writeInt(wall);
+        out.writeShort(score);
+        out.writeByte(floor);
+        out.writeInt(queues);
+    }
+}
@@ -0,0 +1,128 @@
+package game.legacy;
+
+import game.Tile;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * This class reads a game serialized by the first version of the game, before its classes pinned their
+ * serial versions, and resolves to the equal {@link game.Game}. Only fields needed for that are declared;
+ * the rest of the stream's fields are skipped.
+ */
+final class Game implements Serializable {
+    /**
+     * Serial version of the first version of game.Game.
+     */
+    private static final long serialVersionUID = 7371009714810559089L;
+
+    /**
+     * Boards of all players.
+     */
+    private Board[] boards;
+
+    /**
+     * Pouch of tiles.
+     */
+    private Pouch pouch;
+
+    /**
+     * Workshops of the game.
+     */
+    private Workshop[] workshops;
+
+    /**
+     * Tiles dropped to the middle.
+     */
+    private LinkedList<Tile> middleField;
+
+    /**
+     * Flag indicating whether no tiles were drawn from the middle field this round yet.
+     */
+    private boolean isFirst;
+
+    /**
+     * ID of the player that has drawn from the middle field first this round, -1 if none.
+     */
+    private int playerTookFirst;
+
+    /**
+     * ID of the player whose turn this is.
+     */
+    private int currentPlayerTurn;
+
+    /**
+     * Time the game was saved at.
+     */
+    private String whenSaved;
+
+    /**
+     * Usernames of all players.
+     */
+    private ArrayList<String> usernames;
+
+    /**
+     * Workshop of a game of the first version.
+     */
+    static final class Workshop implements Serializable {
+        /**
+         * Serial version of the first version of game.Game.Workshop.
+         */
+        private static final long serialVersionUID = 8063906621744314911L;
+
+        /**
+         * Tiles stored in this workshop, null for none.
+         */
+        private Tile[] tiles;
+    }
+
+    /**
+     * Converts this game into the current classes, by encoding it as {@link game.Game#write(DataOutput)} does
+     * and reading it back, which checks it and derives the rest of its state. Rounds were not counted then,
+     * so they are counted from now on; tiles were not drawn from a seed, so the game gets a new one.
+     *
+     * @return equal game of the current classes
+     * @throws ObjectStreamException if the game is not valid
+     */
+    private Object readResolve() throws ObjectStreamException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(boards.length);
+            out.writeByte(currentPlayerTurn);
+            out.writeByte(0);
+            out.writeByte((isFirst ? 8 : 0) | (playerTookFirst + 1));
+            out.writeLong(0); // no seed, the game gets a new one
+            for (Board board : boards) {
+                board.write(out);
+            }
+            for (Workshop workshop : workshops) {
+                int state = 0;
+                for (int i = 0; i < 4; i++) {
+                    Tile tile = workshop.tiles[i];
+                    state |= (tile == null ? 7 : tile.ordinal()) << 3 * i;
+                }
+                out.writeShort(state);
+            }
+            Pouch.writeCounts(middleField, out);
+            pouch.write(out);
+            if (usernames == null) {
+                out.writeByte(255);
+            } else {
+                out.writeByte(usernames.size());
+                for (String username : usernames) {
+                    out.writeUTF(username);
+                }
+            }
+            out.writeBoolean(whenSaved != null);
+            if (whenSaved != null) {
+                out.writeUTF(whenSaved);
+            }
+            return game.Game.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        } catch (IOException | RuntimeException e) {
+            InvalidObjectException invalid = new InvalidObjectException("Invalid game of the first version: " + e);
+            invalid.initCause(e);
+            throw invalid;
+        }
+    }
+}
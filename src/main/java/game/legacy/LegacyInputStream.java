@@ -0,0 +1,50 @@
+package game.legacy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Map;
+
+/**
+ * This class reads objects serialized by the first version of the game, before its classes pinned their
+ * serial versions: games, boards and pouches of that version are read into stand-ins of this package,
+ * and every game resolves to the equal {@link game.Game}. Everything else is read as usual.
+ */
+public class LegacyInputStream extends ObjectInputStream {
+    /**
+     * Stand-ins of classes of the first version, by names of the classes.
+     */
+    private static final Map<String, Class<?>> STAND_INS = Map.of(
+            "game.Game", Game.class,
+            "game.Game$Workshop", Game.Workshop.class,
+            "game.Board", Board.class,
+            "game.Board$TileQueue", Board.TileQueue.class,
+            "game.Pouch", Pouch.class);
+
+    /**
+     * Constructor for this.
+     *
+     * @param in stream to read from
+     * @throws IOException when the stream's header can not be read
+     */
+    public LegacyInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String name = desc.getName();
+        int dimensions = 0;
+        while (name.charAt(dimensions) == '[') dimensions++;
+        String element = dimensions > 0 && name.charAt(dimensions) == 'L'
+                ? name.substring(dimensions + 1, name.length() - 1)
+                : name;
+        Class<?> standIn = STAND_INS.get(element);
+        if (standIn == null) return super.resolveClass(desc);
+        for (int i = 0; i < dimensions; i++) {
+            standIn = standIn.arrayType();
+        }
+        return standIn;
+    }
+}
@@ -0,0 +1,59 @@
+package game.legacy;
+
+import game.Tile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Stack;
+
+/**
+ * This class reads a pouch serialized by the first version of the game, see {@link Game}.
+ */
+final class Pouch implements Serializable {
+    /**
+     * Serial version of the first version of game.Pouch.
+     */
+    private static final long serialVersionUID = -6382964506440670725L;
+
+    /**
+     * Tiles stored in the pouch.
+     */
+    private Stack<Tile> tiles;
+
+    /**
+     * Tiles that are to return to the pouch.
+     */
+    private Stack<Tile> returnedTiles;
+
+    /**
+     * Writes this pouch as game.Pouch writes its contents: numbers of stored and returned tiles of every colour,
+     * and the number of draws, none of which were made from a seed.
+     *
+     * @param out output to write to
+     * @throws IOException when I/O error occurs
+     */
+    void write(DataOutput out) throws IOException {
+        writeCounts(tiles, out);
+        writeCounts(returnedTiles, out);
+        out.writeInt(0);
+    }
+
+    /**
+     * Writes numbers of passed tiles of every colour, a byte each.
+     *
+     * @param tiles tiles to count
+     * @param out   output to write to
+     * @throws IOException when I/O error occurs
+     */
+    static void writeCounts(Collection<Tile> tiles, DataOutput out) throws IOException {
+        int[] counts = new int[5];
+        for (Tile tile : tiles) {
+            counts[tile.ordinal()]++;
+        }
+        for (int count : counts) {
+            out.writeByte(count);
+        }
+    }
+}
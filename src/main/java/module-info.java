@@ -9,15 +9,18 @@ module azul {
     requires org.kordamp.ikonli.javafx;
     requires org.kordamp.bootstrapfx.core;
     requires eu.hansolo.tilesfx;
-    requires java.desktop;
     requires com.google.common;
 
     opens communication;
     exports communication;
 
     opens game;
+    opens game.legacy;
     exports game;
 
+    exports bot;
+    exports simulation;
+
     opens GUIs;
     exports GUIs;
 
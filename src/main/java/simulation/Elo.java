@@ -0,0 +1,185 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * This class estimates Elo ratings of policies from results of their games.
+ * A game of more players counts as a result between every pair of different policies in it:
+ * the one with the higher final score wins, equal scores are a draw.
+ * <p>
+ * Ratings are the maximum likelihood estimate of the Bradley-Terry model, found with the
+ * minorization-maximization algorithm and centred on 0. One virtual draw between every pair
+ * keeps ratings of policies that won or lost every game finite. Confidence intervals come from
+ * the Fisher information of every rating, taking the other ratings as exact; results of pairs
+ * from the same game are not independent, so the intervals are somewhat too narrow for more than two players.
+ */
+public class Elo {
+    /**
+     * Scale of Elo ratings: the number of points of a tenfold difference in odds.
+     */
+    private static final double SCALE = 400 / Math.log(10);
+
+    /**
+     * Quantile of the normal distribution for 95% confidence intervals.
+     */
+    private static final double Z95 = 1.959964;
+
+    /**
+     * Number of rated policies.
+     */
+    private final int size;
+
+    /**
+     * Points scored by policy i against policy j, a win being 1 and a draw 0.5.
+     */
+    private final double[][] points;
+
+    /**
+     * Number of results between policies i and j.
+     */
+    private final double[][] games;
+
+    /**
+     * Constructor for this.
+     *
+     * @param size number of rated policies
+     */
+    public Elo(int size) {
+        this.size = size;
+        this.points = new double[size][size];
+        this.games = new double[size][size];
+    }
+
+    /**
+     * Records the results of a finished game between every pair of different policies in it.
+     *
+     * @param seatPolicies index of the policy playing every seat
+     * @param scores       final score of every seat
+     */
+    public void add(int[] seatPolicies, int[] scores) {
+        for (int a = 0; a < seatPolicies.length; a++) {
+            for (int b = a + 1; b < seatPolicies.length; b++) {
+                int i = seatPolicies[a];
+                int j = seatPolicies[b];
+                if (i == j) continue;
+                double result = scores[a] > scores[b] ? 1 : scores[a] == scores[b] ? 0.5 : 0;
+                points[i][j] += result;
+                points[j][i] += 1 - result;
+                games[i][j]++;
+                games[j][i]++;
+            }
+        }
+    }
+
+    /**
+     * Adds all results recorded by passed ratings to this.
+     *
+     * @param other ratings of the same policies
+     */
+    public void merge(Elo other) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                points[i][j] += other.points[i][j];
+                games[i][j] += other.games[i][j];
+            }
+        }
+    }
+
+    /**
+     * Estimates ratings of all policies.
+     *
+     * @return Elo rating of every policy, their mean being 0
+     */
+    public double[] ratings() {
+        double[] strengths = new double[size];
+        Arrays.fill(strengths, 1);
+        for (int iteration = 0; iteration < 10_000; iteration++) {
+            double change = 0;
+            for (int i = 0; i < size; i++) {
+                double won = 0;
+                double weight = 0;
+                for (int j = 0; j < size; j++) {
+                    if (i == j) continue;
+                    won += points[i][j] + 0.5;
+                    weight += (games[i][j] + 1) / (strengths[i] + strengths[j]);
+                }
+                double updated = won / weight;
+                change = Math.max(change, Math.abs(Math.log(updated / strengths[i])));
+                strengths[i] = updated;
+            }
+            if (change < 1e-10) break;
+        }
+
+        double[] ratings = new double[size];
+        double mean = 0;
+        for (int i = 0; i < size; i++) {
+            ratings[i] = SCALE * Math.log(strengths[i]);
+            mean += ratings[i] / size;
+        }
+        for (int i = 0; i < size; i++) {
+            ratings[i] -= mean;
+        }
+        return ratings;
+    }
+
+    /**
+     * Estimates half-widths of 95% confidence intervals of passed ratings.
+     *
+     * @param ratings ratings estimated by {@link #ratings()}
+     * @return half-width of the interval of every rating, in Elo points
+     */
+    public double[] errors(double[] ratings) {
+        double[] errors = new double[size];
+        for (int i = 0; i < size; i++) {
+            double information = 0;
+            for (int j = 0; j < size; j++) {
+                if (i == j) continue;
+                double expected = expected(ratings[i], ratings[j]);
+                information += (games[i][j] + 1) * expected * (1 - expected);
+            }
+            errors[i] = Z95 * SCALE / Math.sqrt(information);
+        }
+        return errors;
+    }
+
+    /**
+     * Gets points scored by a policy in all its results.
+     *
+     * @param policy policy's index
+     * @return share of points scored, between 0 and 1
+     */
+    public double score(int policy) {
+        double scored = 0;
+        double played = 0;
+        for (int j = 0; j < size; j++) {
+            scored += points[policy][j];
+            played += games[policy][j];
+        }
+        return played == 0 ? 0 : scored / played;
+    }
+
+    /**
+     * Counts results of a policy.
+     *
+     * @param policy policy's index
+     * @return number of results against other policies
+     */
+    public long results(int policy) {
+        double played = 0;
+        for (int j = 0; j < size; j++) {
+            played += games[policy][j];
+        }
+        return (long) played;
+    }
+
+    /**
+     * Gets expected score of a player against another one.
+     *
+     * @param rating      player's rating
+     * @param otherRating other player's rating
+     * @return expected score, between 0 and 1
+     */
+    private static double expected(double rating, double otherRating) {
+        return 1 / (1 + Math.exp((otherRating - rating) / SCALE));
+    }
+}
@@ -0,0 +1,124 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * This class reads a positions file written by {@link PositionWriter}. The file is mapped
+ * in large read-only chunks and records are passed to the caller as a single reused
+ * {@link PositionRecord} view, so scanning is bound by the disk rather than by decoding.
+ */
+public class PositionReader implements Closeable {
+    /**
+     * Number of records in a mapped chunk of the file.
+     */
+    private static final int CHUNK_RECORDS = 1 << 20;
+
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Number of records in the file.
+     */
+    private final long count;
+
+    /**
+     * Opens passed file.
+     *
+     * @param path path of the file
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the file is not a positions file
+     */
+    public PositionReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.count = count(channel);
+    }
+
+    /**
+     * Reads the header of a positions file and counts its records.
+     *
+     * @param channel channel of the file
+     * @return number of records
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the file is not a positions file
+     */
+    static long count(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PositionRecord.SIZE);
+        if (channel.read(header, 0) < 16) {
+            throw new IllegalArgumentException("Not a positions file");
+        }
+        if (header.getInt(0) != PositionRecord.MAGIC || header.getShort(4) != PositionRecord.VERSION
+                || header.getShort(6) != PositionRecord.SIZE) {
+            throw new IllegalArgumentException("Not a positions file of version " + PositionRecord.VERSION);
+        }
+        long count = header.getLong(8);
+        if (header.get(16) == 0 && count != 0) {
+            return count;
+        }
+
+        // the writer did not finish, records after its count end with the first empty one
+        long slots = channel.size() / PositionRecord.SIZE;
+        long slot = count + 1;
+        while (slot < slots) {
+            int records = (int) Math.min(CHUNK_RECORDS, slots - slot);
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                    slot * PositionRecord.SIZE, (long) records * PositionRecord.SIZE);
+            for (int i = 0; i < records; i++) {
+                if (chunk.get(i * PositionRecord.SIZE + 8) == 0) {
+                    return slot + i - 1;
+                }
+            }
+            slot += records;
+        }
+        return slots - 1;
+    }
+
+    /**
+     * Getter for this.count.
+     *
+     * @return number of records in the file
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Passes all records of the file to passed action, in order. The record passed is a view
+     * that is moved to the next record afterwards, so it must not be kept.
+     *
+     * @param action action to perform on every record
+     * @throws IOException when I/O error occurs
+     */
+    public void forEach(Consumer<PositionRecord> action) throws IOException {
+        PositionRecord record = new PositionRecord();
+        long slot = 1;
+        long end = count + 1;
+        while (slot < end) {
+            int records = (int) Math.min(CHUNK_RECORDS, end - slot);
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                    slot * PositionRecord.SIZE, (long) records * PositionRecord.SIZE);
+            for (int i = 0; i < records; i++) {
+                action.accept(record.at(chunk, i * PositionRecord.SIZE));
+            }
+            slot += records;
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException when I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,275 @@
+package simulation;
+
+import game.Game;
+import game.Move;
+import game.Tile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a view of a single fixed-size record of a positions file: a position of a game,
+ * the move chosen in it and the final scores of the game. A view is moved over the records of a file
+ * with {@link #at(ByteBuffer, int)}, so reading does not allocate.
+ * <p>
+ * A record is {@link #SIZE} bytes: the game's seed (8 bytes), the position as written by
+ * {@link Game#writeTo(ByteBuffer)}, the chosen move (2), the move's index in the game (2)
+ * and final scores of four players, absent ones zero (2 each). All values are big-endian.
+ * <p>
+ * A positions file starts with a header of the same size: {@link #MAGIC}, {@link #VERSION},
+ * the record size, the number of records (8 bytes) and a byte that is 1 while records are being written.
+ * A writer that did not finish leaves that byte set, and its records go on after the header's count
+ * up to the first zeroed one. Records are written concurrently, so one left unfinished hides all after it:
+ * recovery stops at the first gap, and keeps only what the writer had counted plus records before the gap.
+ */
+public class PositionRecord {
+    /**
+     * Number of bytes of a record.
+     */
+    public static final int SIZE = 96;
+
+    /**
+     * First bytes of every positions file.
+     */
+    public static final int MAGIC = 0x415A5052; // "AZPR"
+
+    /**
+     * Version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Offset of the position in a record.
+     */
+    private static final int POSITION = 8;
+
+    /**
+     * Offset of the move in a record.
+     */
+    private static final int MOVE = POSITION + Game.ENCODED_SIZE;
+
+    /**
+     * All tiles, indexed by their ordinal.
+     */
+    private static final Tile[] TILES = Tile.values();
+
+    /**
+     * Buffer holding the viewed record.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Offset of the viewed record in this.buffer.
+     */
+    private int offset;
+
+    /**
+     * Writes a record.
+     *
+     * @param buffer      buffer to write to, at its position
+     * @param seed        seed of the game
+     * @param game        position before the move
+     * @param move        move chosen in the position, packed as described in {@link Move}
+     * @param ply         index of the move in the game
+     * @param finalScores final scores of all players
+     */
+    public static void write(ByteBuffer buffer, long seed, Game game, int move, int ply, int[] finalScores) {
+        buffer.putLong(seed);
+        game.writeTo(buffer);
+        buffer.putShort((short) move);
+        buffer.putShort((short) ply);
+        for (int i = 0; i < 4; i++) {
+            buffer.putShort((short) (i < finalScores.length ? finalScores[i] : 0));
+        }
+    }
+
+    /**
+     * Moves this view to a record.
+     *
+     * @param buffer buffer holding the record
+     * @param offset offset of the record in the buffer
+     * @return this
+     */
+    public PositionRecord at(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Gets seed of the game of the record.
+     *
+     * @return game's seed
+     */
+    public long seed() {
+        return buffer.getLong(offset);
+    }
+
+    /**
+     * Gets number of players of the game.
+     *
+     * @return number of players, 0 if the record is empty
+     */
+    public int players() {
+        return buffer.get(offset + POSITION);
+    }
+
+    /**
+     * Gets the player who chose the move.
+     *
+     * @return player's id
+     */
+    public int currentPlayer() {
+        return buffer.get(offset + POSITION + 1);
+    }
+
+    /**
+     * Gets number of rounds finished before the position.
+     *
+     * @return number of rounds
+     */
+    public int round() {
+        return buffer.get(offset + POSITION + 2) & 0xFF;
+    }
+
+    /**
+     * Checks whether the first player marker is in the middle field.
+     *
+     * @return true, if nobody took the marker yet this round
+     */
+    public boolean isFirst() {
+        return (buffer.get(offset + POSITION + 3) & 8) != 0;
+    }
+
+    /**
+     * Gets the player who took the first player marker.
+     *
+     * @return player's id, -1 if nobody took it
+     */
+    public int playerTookFirst() {
+        return (buffer.get(offset + POSITION + 3) & 7) - 1;
+    }
+
+    /**
+     * Gets wall of a player.
+     *
+     * @param player player's id
+     * @return wall bitboard, see game.Board#getWall()
+     */
+    public int wall(int player) {
+        return buffer.getInt(board(player));
+    }
+
+    /**
+     * Gets score of a player.
+     *
+     * @param player player's id
+     * @return score before the move
+     */
+    public int score(int player) {
+        return buffer.getShort(board(player) + 4);
+    }
+
+    /**
+     * Gets number of tiles on a player's floor.
+     *
+     * @param player player's id
+     * @return number of tiles on the floor
+     */
+    public int floor(int player) {
+        return buffer.get(board(player) + 6) & 0xFF;
+    }
+
+    /**
+     * Gets colour of a player's pattern row.
+     *
+     * @param player player's id
+     * @param row    row's id
+     * @return colour of the row, null if it is empty
+     */
+    public Tile queueColor(int player, int row) {
+        int color = buffer.get(board(player) + 7 + row) >>> 3 & 7;
+        return color == 7 ? null : TILES[color];
+    }
+
+    /**
+     * Gets number of tiles in a player's pattern row.
+     *
+     * @param player player's id
+     * @param row    row's id
+     * @return number of tiles in the row
+     */
+    public int queueCount(int player, int row) {
+        return buffer.get(board(player) + 7 + row) & 7;
+    }
+
+    /**
+     * Gets a tile of a workshop.
+     *
+     * @param workshop workshop's id
+     * @param index    index of the tile in the workshop
+     * @return the tile, null if there is none
+     */
+    public Tile workshopTile(int workshop, int index) {
+        int tile = buffer.getShort(offset + POSITION + 52 + workshop * 2) >>> 3 * index & 7;
+        return tile == 7 ? null : TILES[tile];
+    }
+
+    /**
+     * Counts tiles of passed colour in the middle field.
+     *
+     * @param color colour to count
+     * @return number of tiles in the middle field
+     */
+    public int middleCount(Tile color) {
+        return buffer.get(offset + POSITION + 70 + color.ordinal());
+    }
+
+    /**
+     * Gets the move chosen in the position.
+     *
+     * @return move packed as described in {@link Move}
+     */
+    public int move() {
+        return buffer.getShort(offset + MOVE);
+    }
+
+    /**
+     * Gets index of the move in the game.
+     *
+     * @return number of moves made before the position
+     */
+    public int ply() {
+        return buffer.getShort(offset + MOVE + 2);
+    }
+
+    /**
+     * Gets final score of a player.
+     *
+     * @param player player's id
+     * @return score at the end of the game
+     */
+    public int finalScore(int player) {
+        return buffer.getShort(offset + MOVE + 4 + player * 2);
+    }
+
+    /**
+     * Sets final scores of the viewed record.
+     *
+     * @param finalScores final scores of all players
+     */
+    public void setFinalScores(int[] finalScores) {
+        for (int i = 0; i < 4; i++) {
+            buffer.putShort(offset + MOVE + 4 + i * 2, (short) (i < finalScores.length ? finalScores[i] : 0));
+        }
+    }
+
+    /**
+     * Gets offset of a player's board in this.buffer.
+     *
+     * @param player player's id
+     * @return offset of the board
+     */
+    private int board(int player) {
+        return offset + POSITION + 4 + player * 12;
+    }
+}
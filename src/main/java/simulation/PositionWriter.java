@@ -0,0 +1,182 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class appends records described in {@link PositionRecord} to a memory-mapped positions file.
+ * Many threads may write at once: each write reserves its slots with a single atomic increment
+ * and copies the records straight into the mapping, without locking and without system calls,
+ * except when a new chunk of the file gets mapped. Whenever no write is in progress, the header's
+ * count is brought up to date, so a writer that does not finish loses at most the records after it.
+ */
+public class PositionWriter implements Closeable {
+    /**
+     * Number of records in a mapped chunk of the file.
+     */
+    private static final int CHUNK_RECORDS = 1 << 20;
+
+    /**
+     * Maximal number of mapped chunks, limiting the file to about 100 GB.
+     */
+    private static final int MAX_CHUNKS = 1024;
+
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapped chunks of the file, created when first written to.
+     */
+    private final AtomicReferenceArray<MappedByteBuffer> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    /**
+     * Number of slots taken, including the header.
+     */
+    private final AtomicLong slots;
+
+    /**
+     * Number of records written, may be below the number of taken slots while records are being copied.
+     */
+    private final AtomicLong written;
+
+    /**
+     * Number of records in the header's count.
+     */
+    private long published;
+
+    /**
+     * Opens passed file for appending, creating it if it does not exist. Records that a writer which did
+     * not finish left after the first empty one are dropped.
+     *
+     * @param path path of the file
+     * @throws IOException              when I/O error occurs
+     * @throws IllegalArgumentException if the file is not a positions file
+     */
+    public PositionWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long records = 0;
+        if (channel.size() > 0) {
+            records = PositionReader.count(channel);
+        }
+        channel.truncate((records + 1) * PositionRecord.SIZE);
+        this.slots = new AtomicLong(records + 1);
+        this.written = new AtomicLong(records);
+        this.published = records;
+        writeHeader(records, true); // until closed, readers look for records after the count themselves
+    }
+
+    /**
+     * Writes the header of the file.
+     *
+     * @param count   number of records
+     * @param writing whether records are still being written
+     * @throws IOException when I/O error occurs
+     */
+    private void writeHeader(long count, boolean writing) throws IOException {
+        MappedByteBuffer header = chunk(0);
+        header.putInt(0, PositionRecord.MAGIC);
+        header.putShort(4, PositionRecord.VERSION);
+        header.putShort(6, (short) PositionRecord.SIZE);
+        header.putLong(8, count);
+        header.put(16, (byte) (writing ? 1 : 0));
+    }
+
+    /**
+     * Writes passed number of records to the header's count, unless it already holds more.
+     *
+     * @param count number of records, all of which are written
+     * @throws IOException when I/O error occurs
+     */
+    private synchronized void publish(long count) throws IOException {
+        if (count > published) {
+            chunk(0).putLong(8, count);
+            published = count;
+        }
+    }
+
+    /**
+     * Appends records.
+     *
+     * @param records buffer holding whole records between its position and limit
+     * @throws IOException when I/O error occurs
+     */
+    public void write(ByteBuffer records) throws IOException {
+        int count = records.remaining() / PositionRecord.SIZE;
+        long slot = slots.getAndAdd(count);
+        for (int i = 0; i < count; i++, slot++) {
+            MappedByteBuffer chunk = chunk((int) (slot / CHUNK_RECORDS));
+            chunk.put((int) (slot % CHUNK_RECORDS) * PositionRecord.SIZE, records,
+                    records.position() + i * PositionRecord.SIZE, PositionRecord.SIZE);
+        }
+        records.position(records.limit());
+        long done = written.addAndGet(count);
+        if (done == slots.get() - 1) {
+            publish(done); // no slot is taken without being written, so all records up to done are
+        }
+    }
+
+    /**
+     * Gets a mapped chunk of the file, mapping it if needed.
+     *
+     * @param index chunk's index
+     * @return the chunk
+     * @throws IOException when I/O error occurs
+     */
+    private MappedByteBuffer chunk(int index) throws IOException {
+        if (index >= MAX_CHUNKS) {
+            throw new IllegalStateException("Positions file is full");
+        }
+        MappedByteBuffer chunk = chunks.get(index);
+        if (chunk != null) {
+            return chunk;
+        }
+        synchronized (this) {
+            chunk = chunks.get(index);
+            if (chunk == null) {
+                long size = (long) CHUNK_RECORDS * PositionRecord.SIZE;
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, index * size, size);
+                chunks.set(index, chunk);
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Gets number of records written to the file, including those written before it was opened.
+     *
+     * @return number of records
+     */
+    public long count() {
+        return slots.get() - 1;
+    }
+
+    /**
+     * Writes the header, trims the file to the written records and closes it.
+     * Must not be called while records are being written.
+     *
+     * @throws IOException when I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writeHeader(count(), false);
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            MappedByteBuffer chunk = chunks.get(i);
+            if (chunk != null) chunk.force();
+        }
+        try {
+            channel.truncate(slots.get() * PositionRecord.SIZE);
+        } catch (IOException ignore) {
+            // some systems do not truncate mapped files, the header's count is what readers rely on
+        }
+        channel.close();
+    }
+}
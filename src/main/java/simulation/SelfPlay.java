@@ -0,0 +1,235 @@
+package simulation;
+
+import bot.MonteCarloBot;
+import bot.Policy;
+import game.Game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class plays many games between policies on all cores and writes every position,
+ * the move chosen in it and the final scores to a positions file, see {@link PositionRecord}.
+ * <p>
+ * Usage: {@code SelfPlay [--out FILE] [--games N] [--players P] [--policies a,b,...] [--threads T] [--seed S] [--bot-millis M]}
+ * appends positions to FILE (positions.bin by default), policies are named as in {@link Simulation}.
+ * {@code SelfPlay --read FILE} scans a positions file and reports how fast it was read.
+ */
+public class SelfPlay {
+    /**
+     * Names of policies taking part in the games.
+     */
+    private final String[] policies;
+
+    /**
+     * Number of players of every game.
+     */
+    private final int players;
+
+    /**
+     * Number of games to play.
+     */
+    private final long games;
+
+    /**
+     * Number of playing threads.
+     */
+    private final int threads;
+
+    /**
+     * Seed of the first game, every next game's seed is greater by one.
+     */
+    private final long seed;
+
+    /**
+     * Time the bot policy spends on every move, in milliseconds.
+     */
+    private final long botMillis;
+
+    /**
+     * Constructor for this.
+     *
+     * @param policies  names of policies taking part in the games
+     * @param players   number of players of every game
+     * @param games     number of games to play
+     * @param threads   number of playing threads
+     * @param seed      seed of the first game, every next game's seed is greater by one
+     * @param botMillis time the bot policy spends on every move, in milliseconds
+     */
+    public SelfPlay(String[] policies, int players, long games, int threads, long seed, long botMillis) {
+        if (players < 2 || players > 4) {
+            throw new IllegalArgumentException("Number of players must be between 2 and 4");
+        }
+        for (String policy : policies) {
+            if (!Simulation.POLICIES.contains(policy)) {
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+            }
+        }
+        this.policies = policies;
+        this.players = players;
+        this.games = games;
+        this.threads = threads;
+        this.seed = seed;
+        this.botMillis = botMillis;
+    }
+
+    /**
+     * Plays all games and appends their positions to passed writer.
+     *
+     * @param writer writer of the positions file
+     * @throws UncheckedIOException when I/O error occurs
+     */
+    public void run(PositionWriter writer) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        AtomicLong next = new AtomicLong();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            tasks.add(pool.submit(() -> work(next, writer)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Plays games until all games are taken. Records of a game are collected in a buffer
+     * and written at once when the game ends and its final scores are known.
+     *
+     * @param next   index of the next game to play
+     * @param writer writer of the positions file
+     */
+    private void work(AtomicLong next, PositionWriter writer) {
+        ArrayList<String> usernames = new ArrayList<>();
+        for (int seat = 0; seat < players; seat++) {
+            usernames.add("Player " + (seat + 1));
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(PositionRecord.SIZE * 256);
+        Policy[] instances = new Policy[policies.length];
+        int[] finalScores = new int[players];
+        long index;
+        while ((index = next.getAndIncrement()) < games) {
+            for (int i = 0; i < policies.length; i++) {
+                instances[i] = Simulation.createPolicy(policies[i], (seed + index) * 31 + i, botMillis);
+            }
+
+            Game game = new Game(players, usernames, seed + index);
+            records.clear();
+            int ply = 0;
+            while (!game.isEndOfGame()) {
+                int move = instances[(int) ((game.getCurrentPlayerTurn() + index) % policies.length)].chooseMove(game);
+                if (records.remaining() < PositionRecord.SIZE) {
+                    records = ByteBuffer.allocate(records.capacity() * 2).put(records.flip());
+                }
+                // final scores are filled in when the game ends
+                PositionRecord.write(records, seed + index, game, move, ply++, finalScores);
+                game.apply(move);
+            }
+
+            for (int seat = 0; seat < players; seat++) {
+                finalScores[seat] = game.getPlayer(seat).getScore();
+            }
+            PositionRecord record = new PositionRecord();
+            for (int offset = 0; offset < records.position(); offset += PositionRecord.SIZE) {
+                record.at(records, offset).setFinalScores(finalScores);
+            }
+            try {
+                writer.write(records.flip());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            for (Policy policy : instances) {
+                if (policy instanceof MonteCarloBot) ((MonteCarloBot) policy).shutdown();
+            }
+        }
+    }
+
+    /**
+     * Scans a positions file, printing the number of positions, the mean final score and the speed of reading.
+     *
+     * @param path path of the file
+     * @throws IOException when I/O error occurs
+     */
+    private static void read(Path path) throws IOException {
+        long start = System.nanoTime();
+        long[] sums = new long[2];
+        try (PositionReader reader = new PositionReader(path)) {
+            reader.forEach(record -> {
+                sums[0] += record.finalScore(record.currentPlayer());
+                sums[1]++;
+            });
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Read %d positions in %.3f s (%.0f positions/s, %.1f MB/s), mean final score %.2f%n",
+                sums[1], seconds, sums[1] / seconds, sums[1] * PositionRecord.SIZE / seconds / 1e6,
+                sums[1] == 0 ? 0.0 : (double) sums[0] / sums[1]);
+    }
+
+    /**
+     * Main method to generate or read positions.
+     *
+     * @param args options, see {@link SelfPlay}
+     */
+    public static void main(String[] args) {
+        long games = 10_000;
+        int players = 2;
+        String[] policies = {"greedy", "random"};
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long botMillis = 10;
+        Path out = Path.of("positions.bin");
+
+        try {
+            if (args.length == 2 && args[0].equals("--read")) {
+                read(Path.of(args[1]));
+                return;
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--out" -> out = Path.of(value);
+                    case "--games" -> games = Long.parseLong(value);
+                    case "--players" -> players = Integer.parseInt(value);
+                    case "--policies" -> policies = value.split(",");
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--bot-millis" -> botMillis = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            SelfPlay selfPlay = new SelfPlay(policies, players, games, threads, seed, botMillis);
+
+            System.out.printf("Playing %d games of %s on %d threads into %s ...%n",
+                    games, String.join(" vs ", policies), threads, out);
+            long start = System.nanoTime();
+            long written;
+            try (PositionWriter writer = new PositionWriter(out)) {
+                long before = writer.count();
+                selfPlay.run(writer);
+                written = writer.count() - before;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Wrote %d positions in %.3f s (%.0f positions/s), file has %d bytes%n",
+                    written, seconds, written / seconds, Files.size(out));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: SelfPlay [--out FILE] [--games N] [--players P] [--policies a,b,...] " +
+                    "[--threads T] [--seed S] [--bot-millis M]");
+            System.err.println("       SelfPlay --read FILE");
+            System.exit(1);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error accessing positions file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package simulation;
+
+import bot.ExpectimaxSearch;
+import bot.GreedyPolicy;
+import bot.MonteCarloBot;
+import bot.Policy;
+import bot.RandomPolicy;
+import game.Game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class plays many complete games between policies, headless and on all cores,
+ * and reports statistics of the results. It only uses the game and bot packages,
+ * so running it never touches the GUI.
+ * <p>
+ * Usage: {@code Simulation [--games N] [--players P] [--policies a,b,...] [--threads T] [--seed S] [--bot-millis M]},
+ * where policies are any of {@code random}, {@code greedy}, {@code bot} and {@code expectimax}. Seats are assigned
+ * to the policies in rotation, shifted by one every game.
+ */
+public class Simulation {
+    /**
+     * Names of all available policies.
+     */
+    static final List<String> POLICIES = List.of("random", "greedy", "bot", "expectimax");
+
+    /**
+     * Names of policies taking part in this simulation.
+     */
+    private final String[] policies;
+
+    /**
+     * Number of players of every game.
+     */
+    private final int players;
+
+    /**
+     * Number of games to play.
+     */
+    private final long games;
+
+    /**
+     * Number of simulating threads.
+     */
+    private final int threads;
+
+    /**
+     * Seed of the first game, every next game's seed is greater by one.
+     */
+    private final long seed;
+
+    /**
+     * Time the bot policy spends on every move, in milliseconds.
+     */
+    private final long botMillis;
+
+    /**
+     * Constructor for this.
+     *
+     * @param policies  names of policies taking part in this simulation
+     * @param players   number of players of every game
+     * @param games     number of games to play
+     * @param threads   number of simulating threads
+     * @param seed      seed of the first game, every next game's seed is greater by one
+     * @param botMillis time the bot policy spends on every move, in milliseconds
+     */
+    public Simulation(String[] policies, int players, long games, int threads, long seed, long botMillis) {
+        if (players < 2 || players > 4) {
+            throw new IllegalArgumentException("Number of players must be between 2 and 4");
+        }
+        this.policies = policies;
+        this.players = players;
+        this.games = games;
+        this.threads = threads;
+        this.seed = seed;
+        this.botMillis = botMillis;
+        for (String policy : policies) {
+            if (!POLICIES.contains(policy)) {
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+            }
+        }
+    }
+
+    /**
+     * Creates a policy matching passed name.
+     *
+     * @param name      name of the policy
+     * @param seed      seed of the policy's randomness
+     * @param botMillis time the bot and expectimax policies spend on every move, in milliseconds
+     * @return created policy
+     * @throws IllegalArgumentException if the name does not match any policy
+     */
+    static Policy createPolicy(String name, long seed, long botMillis) {
+        switch (name) {
+            case "random" -> {
+                return new RandomPolicy(seed);
+            }
+            case "greedy" -> {
+                return new GreedyPolicy(seed);
+            }
+            case "bot" -> {
+                // every simulating thread already keeps one core busy
+                return new MonteCarloBot(botMillis, 1);
+            }
+            case "expectimax" -> {
+                return new ExpectimaxSearch(botMillis, seed);
+            }
+            default -> throw new IllegalArgumentException("Unknown policy: " + name);
+        }
+    }
+
+    /**
+     * Plays all games of this simulation.
+     *
+     * @return statistics of played games
+     */
+    public Statistics run() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        AtomicLong next = new AtomicLong();
+        List<ForkJoinTask<Statistics>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            tasks.add(pool.submit(() -> work(next)));
+        }
+
+        Statistics statistics = new Statistics(policies, players);
+        for (ForkJoinTask<Statistics> task : tasks) {
+            statistics.merge(task.join());
+        }
+        pool.shutdown();
+        return statistics;
+    }
+
+    /**
+     * Plays games until all games of this simulation are taken.
+     * Game number i is seeded with {@code seed + i}, so results do not depend on
+     * which thread plays which game.
+     *
+     * @param next index of the next game to play
+     * @return statistics of games played by this worker
+     */
+    private Statistics work(AtomicLong next) {
+        ArrayList<String> usernames = new ArrayList<>();
+        for (int seat = 0; seat < players; seat++) {
+            usernames.add("Player " + (seat + 1));
+        }
+
+        Statistics statistics = new Statistics(policies, players);
+        Policy[] instances = new Policy[policies.length];
+        int[] seatPolicies = new int[players];
+        long index;
+        while ((index = next.getAndIncrement()) < games) {
+            for (int i = 0; i < policies.length; i++) {
+                instances[i] = createPolicy(policies[i], (seed + index) * 31 + i, botMillis);
+            }
+            for (int seat = 0; seat < players; seat++) {
+                seatPolicies[seat] = (int) ((seat + index) % policies.length);
+            }
+
+            Game game = new Game(players, usernames, seed + index);
+            int firstPlayer = game.getCurrentPlayerTurn();
+            int moves = 0;
+            while (!game.isEndOfGame()) {
+                game.apply(instances[seatPolicies[game.getCurrentPlayerTurn()]].chooseMove(game));
+                moves++;
+            }
+            statistics.add(game, seatPolicies, firstPlayer, moves);
+
+            for (Policy policy : instances) {
+                if (policy instanceof MonteCarloBot) ((MonteCarloBot) policy).shutdown();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Main method to run a simulation.
+     *
+     * @param args options of the simulation, see {@link Simulation}
+     */
+    public static void main(String[] args) {
+        long games = 10_000;
+        int players = 2;
+        String[] policies = {"greedy", "random"};
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long botMillis = 10;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--games" -> games = Long.parseLong(value);
+                    case "--players" -> players = Integer.parseInt(value);
+                    case "--policies" -> policies = value.split(",");
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--bot-millis" -> botMillis = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            Simulation simulation = new Simulation(policies, players, games, threads, seed, botMillis);
+
+            System.out.printf("Simulating %d games of %s on %d threads ...%n", games, String.join(" vs ", policies), threads);
+            long start = System.nanoTime();
+            Statistics statistics = simulation.run();
+            statistics.print(System.out, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: Simulation [--games N] [--players P] [--policies a,b,...] " +
+                    "[--threads T] [--seed S] [--bot-millis M]");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package simulation;
+
+import game.Game;
+
+import java.io.PrintStream;
+
+/**
+ * This class accumulates results of simulated games. Instances are not thread-safe,
+ * every simulating thread fills its own and they are merged afterwards.
+ */
+public class Statistics {
+    /**
+     * Width of a single bucket of the score histogram.
+     */
+    private static final int SCORE_BUCKET = 10;
+
+    /**
+     * Number of buckets of the score histogram, the last one collects all higher scores.
+     */
+    private static final int SCORE_BUCKETS = 16;
+
+    /**
+     * Number of buckets of the game length histogram, the last one collects all longer games.
+     */
+    private static final int MAX_ROUNDS = 16;
+
+    /**
+     * Names of policies taking part in the simulation.
+     */
+    private final String[] policies;
+
+    /**
+     * Number of players of every game.
+     */
+    private final int players;
+
+    /**
+     * Number of finished games.
+     */
+    private long games;
+
+    /**
+     * Number of moves made in all games.
+     */
+    private long moves;
+
+    /**
+     * Number of games by their length in rounds.
+     */
+    private final long[] rounds = new long[MAX_ROUNDS + 1];
+
+    /**
+     * Number of final scores by their bucket.
+     */
+    private final long[] scores = new long[SCORE_BUCKETS];
+
+    /**
+     * Sum of final scores of every policy.
+     */
+    private final long[] policyScores;
+
+    /**
+     * Sum of squared final scores of every policy.
+     */
+    private final long[] policySquares;
+
+    /**
+     * Number of seats taken by every policy.
+     */
+    private final long[] policySeats;
+
+    /**
+     * Wins of every policy, ties are split between the winners.
+     */
+    private final double[] policyWins;
+
+    /**
+     * Wins by turn order, 0 being the player who started the game.
+     */
+    private final double[] orderWins;
+
+    /**
+     * Constructor for this.
+     *
+     * @param policies names of policies taking part in the simulation
+     * @param players  number of players of every game
+     */
+    public Statistics(String[] policies, int players) {
+        this.policies = policies;
+        this.players = players;
+        this.policyScores = new long[policies.length];
+        this.policySquares = new long[policies.length];
+        this.policySeats = new long[policies.length];
+        this.policyWins = new double[policies.length];
+        this.orderWins = new double[players];
+    }
+
+    /**
+     * Records a finished game.
+     *
+     * @param game          finished game
+     * @param seatPolicies  index of policy playing every seat
+     * @param firstPlayer   seat that started the game
+     * @param moveCount     number of moves made in the game
+     */
+    public void add(Game game, int[] seatPolicies, int firstPlayer, int moveCount) {
+        games++;
+        moves += moveCount;
+        rounds[Math.min(game.getRound(), MAX_ROUNDS)]++;
+
+        int best = Integer.MIN_VALUE;
+        int winners = 0;
+        for (int seat = 0; seat < players; seat++) {
+            int score = game.getPlayer(seat).getScore();
+            if (score > best) {
+                best = score;
+                winners = 1;
+            } else if (score == best) {
+                winners++;
+            }
+        }
+        for (int seat = 0; seat < players; seat++) {
+            int score = game.getPlayer(seat).getScore();
+            int policy = seatPolicies[seat];
+            scores[Math.min(score / SCORE_BUCKET, SCORE_BUCKETS - 1)]++;
+            policyScores[policy] += score;
+            policySquares[policy] += (long) score * score;
+            policySeats[policy]++;
+            if (score == best) {
+                policyWins[policy] += 1.0 / winners;
+                orderWins[(seat - firstPlayer + players) % players] += 1.0 / winners;
+            }
+        }
+    }
+
+    /**
+     * Adds all results recorded by passed statistics to this.
+     *
+     * @param other statistics to merge
+     */
+    public void merge(Statistics other) {
+        games += other.games;
+        moves += other.moves;
+        for (int i = 0; i < rounds.length; i++) rounds[i] += other.rounds[i];
+        for (int i = 0; i < scores.length; i++) scores[i] += other.scores[i];
+        for (int i = 0; i < policies.length; i++) {
+            policyScores[i] += other.policyScores[i];
+            policySquares[i] += other.policySquares[i];
+            policySeats[i] += other.policySeats[i];
+            policyWins[i] += other.policyWins[i];
+        }
+        for (int i = 0; i < players; i++) orderWins[i] += other.orderWins[i];
+    }
+
+    /**
+     * Getter for this.games.
+     *
+     * @return number of finished games
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Prints a report of all recorded games.
+     *
+     * @param out     stream to print to
+     * @param seconds duration of the simulation
+     */
+    public void print(PrintStream out, double seconds) {
+        out.printf("Games: %d (%d players), %.1f s, %.1f games/s, %.0f moves/s%n",
+                games, players, seconds, games / seconds, moves / seconds);
+
+        out.printf("%nPolicy        seats    win rate   mean score   std dev   (fair win rate: %.2f%%)%n", 100.0 / players);
+        for (int i = 0; i < policies.length; i++) {
+            if (policySeats[i] == 0) continue;
+            double mean = (double) policyScores[i] / policySeats[i];
+            double variance = (double) policySquares[i] / policySeats[i] - mean * mean;
+            out.printf("%-12s %6d %10.2f%% %12.2f %9.2f%n", policies[i], policySeats[i],
+                    100 * policyWins[i] / policySeats[i],
+                    mean, Math.sqrt(Math.max(variance, 0)));
+        }
+
+        out.println("\nTurn order   win rate");
+        for (int i = 0; i < players; i++) {
+            out.printf("%-12d %8.2f%%%n", i + 1, 100 * orderWins[i] / games);
+        }
+
+        out.println("\nScore        games");
+        for (int i = 0; i < SCORE_BUCKETS; i++) {
+            if (scores[i] == 0) continue;
+            String range = i == SCORE_BUCKETS - 1
+                    ? String.format("%d+", i * SCORE_BUCKET)
+                    : String.format("%d-%d", i * SCORE_BUCKET, (i + 1) * SCORE_BUCKET - 1);
+            out.printf("%-12s %6d %s%n", range, scores[i], bar(scores[i], games * players));
+        }
+
+        out.println("\nRounds       games");
+        for (int i = 0; i <= MAX_ROUNDS; i++) {
+            if (rounds[i] == 0) continue;
+            out.printf("%-12s %6d %s%n", i == MAX_ROUNDS ? i + "+" : String.valueOf(i), rounds[i], bar(rounds[i], games));
+        }
+    }
+
+    /**
+     * Draws a bar of a histogram.
+     *
+     * @param value value of the bucket
+     * @param total sum of all buckets
+     * @return bar proportional to value's share of total
+     */
+    private static String bar(long value, long total) {
+        return "#".repeat((int) Math.round(50.0 * value / total));
+    }
+}
@@ -0,0 +1,346 @@
+package simulation;
+
+import bot.MonteCarloBot;
+import bot.Policy;
+import game.Game;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class runs a tournament between policies on all cores and rates them with {@link Elo}.
+ * <p>
+ * Games are played in groups: a group picks a seating size, a lineup of policies and a deal (game seed),
+ * then plays the deal once for every rotation of the lineup around the table, so that every policy
+ * of the lineup plays every seat of the same deal. Seating sizes take turns between groups.
+ * The tournament stops once the confidence interval of every rating is narrower than the requested precision,
+ * or when the maximal number of games is played. A policy losing nearly every game has a wide interval,
+ * so including one makes the tournament run up to the maximal number of games.
+ * <p>
+ * Usage: {@code Tournament [--policies a,b,...] [--seatings 2,3,4] [--threads T] [--seed S] [--bot-millis M]
+ * [--min-games N] [--max-games N] [--precision E]}, policies are named as in {@link Simulation}.
+ */
+public class Tournament {
+    /**
+     * Time between progress reports, in milliseconds.
+     */
+    private static final long REPORT_MILLIS = 2000;
+
+    /**
+     * Names of policies taking part in the tournament.
+     */
+    private final String[] policies;
+
+    /**
+     * Numbers of players of games, taking turns between groups.
+     */
+    private final int[] seatings;
+
+    /**
+     * Number of playing threads.
+     */
+    private final int threads;
+
+    /**
+     * Seed of the tournament, from which all deals and lineups are derived.
+     */
+    private final long seed;
+
+    /**
+     * Time the bot and expectimax policies spend on every move, in milliseconds.
+     */
+    private final long botMillis;
+
+    /**
+     * Number of games played before convergence is checked.
+     */
+    private final long minGames;
+
+    /**
+     * Number of games after which the tournament stops even if ratings did not converge.
+     */
+    private final long maxGames;
+
+    /**
+     * Half-width of 95% confidence intervals of all ratings at which the tournament stops, in Elo points.
+     */
+    private final double precision;
+
+    /**
+     * Results of all finished games. Guarded by itself.
+     */
+    private final Elo elo;
+
+    /**
+     * Number of finished games.
+     */
+    private final AtomicLong finished = new AtomicLong();
+
+    /**
+     * Number of moves made in finished games.
+     */
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Indicating whether the ratings converged, so no more groups should be started.
+     */
+    private volatile boolean converged;
+
+    /**
+     * Constructor for this.
+     *
+     * @param policies  names of policies taking part in the tournament
+     * @param seatings  numbers of players of games, taking turns between groups
+     * @param threads   number of playing threads
+     * @param seed      seed of the tournament
+     * @param botMillis time the bot and expectimax policies spend on every move, in milliseconds
+     * @param minGames  number of games played before convergence is checked
+     * @param maxGames  number of games after which the tournament stops
+     * @param precision half-width of 95% confidence intervals at which the tournament stops, in Elo points
+     */
+    public Tournament(String[] policies, int[] seatings, int threads, long seed, long botMillis,
+                      long minGames, long maxGames, double precision) {
+        if (policies.length < 2) {
+            throw new IllegalArgumentException("At least two policies are needed");
+        }
+        for (String policy : policies) {
+            if (!Simulation.POLICIES.contains(policy)) {
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+            }
+        }
+        for (int players : seatings) {
+            if (players < 2 || players > 4) {
+                throw new IllegalArgumentException("Number of players must be between 2 and 4");
+            }
+        }
+        this.policies = policies;
+        this.seatings = seatings;
+        this.threads = threads;
+        this.seed = seed;
+        this.botMillis = botMillis;
+        this.minGames = minGames;
+        this.maxGames = maxGames;
+        this.precision = precision;
+        this.elo = new Elo(policies.length);
+    }
+
+    /**
+     * Plays the tournament, printing progress reports.
+     *
+     * @param out stream to print the reports to
+     * @return results of all played games
+     */
+    public Elo run(PrintStream out) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> work(next));
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(REPORT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Elo snapshot = snapshot();
+                double[] ratings = snapshot.ratings();
+                double[] errors = snapshot.errors(ratings);
+                report(out, ratings, errors, (System.nanoTime() - start) / 1e9);
+                if (finished.get() >= minGames && max(errors) < precision) {
+                    converged = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            converged = true;
+        }
+        return snapshot();
+    }
+
+    /**
+     * Plays groups of games until the tournament stops.
+     *
+     * @param next index of the next group to play
+     */
+    private void work(AtomicLong next) {
+        ArrayList<String> usernames = new ArrayList<>(List.of("Player 1", "Player 2", "Player 3", "Player 4"));
+        long group;
+        while (!converged && finished.get() < maxGames) {
+            group = next.getAndIncrement();
+            SplittableRandom random = new SplittableRandom(seed ^ group * 0x9E3779B97F4A7C15L);
+            int players = seatings[(int) (group % seatings.length)];
+            int[] lineup = lineup(players, random);
+            long deal = random.nextLong();
+
+            int[] seatPolicies = new int[players];
+            int[] scores = new int[players];
+            for (int rotation = 0; rotation < players; rotation++) {
+                Policy[] instances = new Policy[players];
+                for (int seat = 0; seat < players; seat++) {
+                    seatPolicies[seat] = lineup[(seat + rotation) % players];
+                    instances[seat] = Simulation.createPolicy(policies[seatPolicies[seat]], random.nextLong(), botMillis);
+                }
+
+                Game game = new Game(players, new ArrayList<>(usernames.subList(0, players)), deal);
+                int moveCount = 0;
+                while (!game.isEndOfGame()) {
+                    game.apply(instances[game.getCurrentPlayerTurn()].chooseMove(game));
+                    moveCount++;
+                }
+                for (int seat = 0; seat < players; seat++) {
+                    scores[seat] = game.getPlayer(seat).getScore();
+                    if (instances[seat] instanceof MonteCarloBot) ((MonteCarloBot) instances[seat]).shutdown();
+                }
+
+                synchronized (elo) {
+                    elo.add(seatPolicies, scores);
+                }
+                moves.add(moveCount);
+                finished.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Picks policies of a group: distinct ones if there are enough of them, otherwise every policy
+     * at least once. The order is random.
+     *
+     * @param players number of players of the group's games
+     * @param random  source of randomness of the group
+     * @return index of the policy of every seat before rotation
+     */
+    private int[] lineup(int players, SplittableRandom random) {
+        int[] order = new int[policies.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[] lineup = new int[players];
+        for (int seat = 0; seat < players; seat++) {
+            lineup[seat] = order[seat % order.length];
+        }
+        return lineup;
+    }
+
+    /**
+     * Copies results of all games finished so far.
+     *
+     * @return copy of the results
+     */
+    private Elo snapshot() {
+        Elo snapshot = new Elo(policies.length);
+        synchronized (elo) {
+            snapshot.merge(elo);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Prints a progress report.
+     *
+     * @param out     stream to print to
+     * @param ratings current ratings
+     * @param errors  half-widths of their confidence intervals
+     * @param seconds time since the tournament started
+     */
+    private void report(PrintStream out, double[] ratings, double[] errors, double seconds) {
+        StringBuilder line = new StringBuilder(String.format("%8d games %8.1f games/s %10.0f moves/s |",
+                finished.get(), finished.get() / seconds, moves.sum() / seconds));
+        for (int i = 0; i < policies.length; i++) {
+            line.append(String.format(" %s %+.0f+/-%.0f", policies[i], ratings[i], errors[i]));
+        }
+        out.println(line);
+    }
+
+    /**
+     * Prints final ratings.
+     *
+     * @param out     stream to print to
+     * @param results results of all played games
+     * @param seconds duration of the tournament
+     */
+    public void print(PrintStream out, Elo results, double seconds) {
+        double[] ratings = results.ratings();
+        double[] errors = results.errors(ratings);
+        out.printf("%nGames: %d in %.1f s, %.1f games/s, %.0f moves/s, %s%n", finished.get(), seconds,
+                finished.get() / seconds, moves.sum() / seconds,
+                converged ? String.format("ratings converged to +/-%.0f Elo", precision) : "ratings did not converge");
+        out.printf("%nPolicy            Elo     95%% CI     score   results%n");
+        Integer[] order = new Integer[policies.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(ratings[b], ratings[a]));
+        for (int i : order) {
+            out.printf("%-12s %8.0f %10.0f %8.2f%% %9d%n", policies[i], ratings[i], errors[i],
+                    100 * results.score(i), results.results(i));
+        }
+    }
+
+    /**
+     * Gets the greatest of passed values.
+     *
+     * @param values values to compare
+     * @return the greatest value
+     */
+    private static double max(double[] values) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Main method to run a tournament.
+     *
+     * @param args options of the tournament, see {@link Tournament}
+     */
+    public static void main(String[] args) {
+        String[] policies = {"greedy", "expectimax"};
+        int[] seatings = {2, 3, 4};
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long botMillis = 5;
+        long minGames = 200;
+        long maxGames = 100_000;
+        double precision = 25;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--policies" -> policies = value.split(",");
+                    case "--seatings" -> seatings = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--bot-millis" -> botMillis = Long.parseLong(value);
+                    case "--min-games" -> minGames = Long.parseLong(value);
+                    case "--max-games" -> maxGames = Long.parseLong(value);
+                    case "--precision" -> precision = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            Tournament tournament = new Tournament(policies, seatings, threads, seed, botMillis, minGames, maxGames, precision);
+
+            System.out.printf("Tournament of %s in seatings of %s players on %d threads ...%n",
+                    String.join(", ", policies), Arrays.toString(seatings), threads);
+            long start = System.nanoTime();
+            Elo results = tournament.run(System.out);
+            tournament.print(System.out, results, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: Tournament [--policies a,b,...] [--seatings 2,3,4] [--threads T] [--seed S] " +
+                    "[--bot-millis M] [--min-games N] [--max-games N] [--precision E]");
+            System.exit(1);
+        }
+    }
+}